@@ -0,0 +1,124 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Scanner;
+
+/** Synthetic configurations of arbitrary alphabet size and rotor count
+ *  for the benchmarks.
+ *  @author Razi Mahmood
+ */
+class BenchConfigs {
+
+    /** Return the characters of an alphabet of SIZE characters: the
+     *  upper-case letters when SIZE <= 26, and otherwise a contiguous
+     *  run of characters starting at U+0100. */
+    static String alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        char first = size <= LETTERS ? 'A' : WIDE_BASE;
+        for (int i = 0; i < size; i++) {
+            chars.append((char) (first + i));
+        }
+        return chars.toString();
+    }
+
+    /** Return the text of a configuration over ALPHABET with ROTORS
+     *  slots (at most 9) and PAWLS pawls, holding exactly the rotors named
+     *  by settings(ROTORS, PAWLS), with random wirings drawn from SEED. */
+    static String config(String alphabet, int rotors, int pawls, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        text.append(alphabet).append('\n');
+        text.append(' ').append(rotors).append(' ').append(pawls)
+            .append('\n');
+        text.append("R0 R ").append(reflector(alphabet, random))
+            .append('\n');
+        for (int i = 1; i < rotors; i++) {
+            if (i < rotors - pawls) {
+                text.append('F').append(i).append(" N ");
+            } else {
+                char notch =
+                    alphabet.charAt(random.nextInt(alphabet.length()));
+                text.append('M').append(i).append(" M").append(notch)
+                    .append(' ');
+            }
+            text.append(cycle(alphabet, random)).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return a settings line for a configuration made by config with
+     *  ROTORS slots and PAWLS pawls over ALPHABET, with all rotors at
+     *  the first character. */
+    static String settings(String alphabet, int rotors, int pawls) {
+        StringBuilder line = new StringBuilder("* R0");
+        for (int i = 1; i < rotors; i++) {
+            line.append(i < rotors - pawls ? " F" : " M").append(i);
+        }
+        line.append(' ');
+        for (int i = 1; i < rotors; i++) {
+            line.append(alphabet.charAt(0));
+        }
+        return line.toString();
+    }
+
+    /** Return a machine for the configuration text CONFIG, set up
+     *  according to SETTINGS. */
+    static Machine machine(String config, String settings) {
+        Main parser = new Main(new Scanner(config));
+        Machine machine = parser.readConfig();
+        parser.processDirective(parser.stripLine(settings), machine);
+        return machine;
+    }
+
+    /** Return a random message of LENGTH characters of ALPHABET drawn
+     *  from SEED. */
+    static String message(String alphabet, int length, long seed) {
+        Random random = new Random(seed);
+        char[] msg = new char[length];
+        for (int i = 0; i < length; i++) {
+            msg[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(msg);
+    }
+
+    /** Return ALPHABET as a single random cycle, drawn from RANDOM. */
+    static String cycle(String alphabet, Random random) {
+        ArrayList<Character> chars = shuffled(alphabet, random);
+        StringBuilder result = new StringBuilder("(");
+        for (char c : chars) {
+            result.append(c);
+        }
+        return result.append(')').toString();
+    }
+
+    /** Return ALPHABET, which must have even length, as random
+     *  two-cycles drawn from RANDOM. */
+    private static String reflector(String alphabet, Random random) {
+        ArrayList<Character> chars = shuffled(alphabet, random);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i + 1 < chars.size(); i += 2) {
+            result.append('(').append(chars.get(i)).append(chars.get(i + 1))
+                .append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return the characters of ALPHABET in an order drawn from
+     *  RANDOM. */
+    private static ArrayList<Character> shuffled(String alphabet,
+                                                 Random random) {
+        ArrayList<Character> chars = new ArrayList<Character>();
+        for (int i = 0; i < alphabet.length(); i++) {
+            chars.add(alphabet.charAt(i));
+        }
+        Collections.shuffle(chars, random);
+        return chars;
+    }
+
+    /** Number of upper-case letters. */
+    private static final int LETTERS = 26;
+    /** First character of alphabets larger than LETTERS. */
+    private static final char WIDE_BASE = '\u0100';
+}
@@ -0,0 +1,92 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Per-character throughput of Machine.convert across alphabet sizes and
+ *  rotor counts.
+ *  @author Razi Mahmood
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MachineBenchmark {
+
+    /** Number of characters of the alphabet. */
+    @Param({ "26", "256" })
+    public int alphabetSize;
+
+    /** Number of rotor slots, including the reflector. */
+    @Param({ "3", "5", "9" })
+    public int rotors;
+
+    /** Set up a machine and a message. */
+    @Setup
+    public void setUp() {
+        String chars = BenchConfigs.alphabet(alphabetSize);
+        int pawls = Math.min(PAWLS, rotors - 1);
+        _machine = BenchConfigs.machine(
+            BenchConfigs.config(chars, rotors, pawls, SEED),
+            BenchConfigs.settings(chars, rotors, pawls));
+        _message = BenchConfigs.message(chars, LENGTH, SEED);
+        _chars = _message.toCharArray();
+        _out = new char[LENGTH];
+        Alphabet alphabet = _machine.alphabet();
+        for (int i = 0; i < LENGTH; i++) {
+            _indices[i] = alphabet.toInt(_chars[i]);
+        }
+    }
+
+    /** Convert the message one index at a time. */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public int convertInt() {
+        int sum = 0;
+        for (int c : _indices) {
+            sum += _machine.convert(c);
+        }
+        return sum;
+    }
+
+    /** Convert the message as a String. */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** Convert the message between char buffers. */
+    @Benchmark
+    @OperationsPerInvocation(LENGTH)
+    public char[] convertBuffer() {
+        _machine.convert(_chars, 0, LENGTH, _out, 0);
+        return _out;
+    }
+
+    /** Number of characters per invocation. */
+    static final int LENGTH = 4096;
+    /** Largest number of pawls used. */
+    static final int PAWLS = 3;
+    /** Random seed. */
+    static final long SEED = 61;
+
+    /** Machine under test. */
+    private Machine _machine;
+    /** Message to convert. */
+    private String _message;
+    /** _message as an array. */
+    private char[] _chars;
+    /** Destination of convertBuffer. */
+    private char[] _out;
+    /** _message as alphabet indices. */
+    private final int[] _indices = new int[LENGTH];
+}
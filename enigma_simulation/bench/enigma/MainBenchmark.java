@@ -0,0 +1,104 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Time for enigma.Main to process a configuration and input file into an
+ *  output file, end to end.
+ *  @author Razi Mahmood
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MainBenchmark {
+
+    /** Number of characters in each message line. */
+    @Param({ "100", "100000" })
+    public int lineLength;
+
+    /** Options passed to Main before the file names. */
+    @Param({ "", "--mmap" })
+    public String options;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        String chars = BenchConfigs.alphabet(LETTERS);
+        _config = File.createTempFile("enigma", ".conf");
+        _input = File.createTempFile("enigma", ".in");
+        _output = File.createTempFile("enigma", ".out");
+        write(_config, BenchConfigs.config(chars, ROTORS, PAWLS, SEED));
+        StringBuilder input = new StringBuilder();
+        input.append(BenchConfigs.settings(chars, ROTORS, PAWLS))
+            .append('\n');
+        String line = BenchConfigs.message(chars, lineLength, SEED);
+        for (int i = 0; i < TOTAL / lineLength; i++) {
+            input.append(line).append('\n');
+        }
+        write(_input, input.toString());
+    }
+
+    /** Remove the files. */
+    @TearDown
+    public void tearDown() {
+        _config.delete();
+        _input.delete();
+        _output.delete();
+    }
+
+    /** Process the input file. */
+    @Benchmark
+    public long process() {
+        String[] files = { _config.getPath(), _input.getPath(),
+                           _output.getPath() };
+        String[] args = files;
+        if (!options.isEmpty()) {
+            args = new String[files.length + 1];
+            args[0] = options;
+            System.arraycopy(files, 0, args, 1, files.length);
+        }
+        new Main(args).process();
+        return _output.length();
+    }
+
+    /** Write TEXT to FILE. */
+    private static void write(File file, String text) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file),
+                                                 StandardCharsets.UTF_8)) {
+            out.write(text);
+        }
+    }
+
+    /** Total number of message characters in the input. */
+    static final int TOTAL = 1 << 20;
+    /** Alphabet size. */
+    static final int LETTERS = 26;
+    /** Number of rotor slots. */
+    static final int ROTORS = 5;
+    /** Number of pawls. */
+    static final int PAWLS = 3;
+    /** Random seed. */
+    static final long SEED = 61;
+
+    /** Configuration file. */
+    private File _config;
+    /** Input file. */
+    private File _input;
+    /** Output file. */
+    private File _output;
+}
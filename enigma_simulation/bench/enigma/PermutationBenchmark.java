@@ -0,0 +1,87 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Throughput of Permutation.permute and invert on index arguments, and
+ *  of Rotor.convertForward, across alphabet sizes.
+ *  @author Razi Mahmood
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PermutationBenchmark {
+
+    /** Number of characters of the alphabet. */
+    @Param({ "26", "64", "256", "4096" })
+    public int alphabetSize;
+
+    /** Set up a random permutation and rotor, and the inputs. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(SEED);
+        String chars = BenchConfigs.alphabet(alphabetSize);
+        Alphabet alphabet = new Alphabet(chars);
+        _perm = new Permutation(BenchConfigs.cycle(chars, random), alphabet);
+        _rotor = new MovingRotor("M", _perm, chars.substring(0, 1));
+        _rotor.set(random.nextInt(alphabetSize));
+        for (int i = 0; i < INPUTS; i++) {
+            _inputs[i] = random.nextInt(alphabetSize);
+        }
+    }
+
+    /** Apply the permutation to each input. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int permute() {
+        int sum = 0;
+        for (int x : _inputs) {
+            sum += _perm.permute(x);
+        }
+        return sum;
+    }
+
+    /** Apply the inverse permutation to each input. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int invert() {
+        int sum = 0;
+        for (int x : _inputs) {
+            sum += _perm.invert(x);
+        }
+        return sum;
+    }
+
+    /** Pass each input forward through the rotor. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public int convertForward() {
+        int sum = 0;
+        for (int x : _inputs) {
+            sum += _rotor.convertForward(x);
+        }
+        return sum;
+    }
+
+    /** Number of inputs per invocation. */
+    static final int INPUTS = 1024;
+    /** Random seed. */
+    static final long SEED = 61;
+
+    /** Permutation under test. */
+    private Permutation _perm;
+    /** Rotor wired with _perm. */
+    private Rotor _rotor;
+    /** Indices to convert. */
+    private final int[] _inputs = new int[INPUTS];
+}
@@ -1,9 +1,13 @@
 package enigma;
 
-import java.util.HashSet;
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  The character-to-index mapping
+ *  is precomputed on construction: a dense table covering the range of
+ *  characters when that range is small, and otherwise a compact
+ *  open-addressed hash table.
  *  @author Razi Mahmood
  */
 class Alphabet {
@@ -11,8 +15,8 @@ class Alphabet {
     /** A new alphabet containing CHARS.  Character number #k has index
      *  K (numbering from 0). No character may be duplicated. */
     private String alphabetString;
-    /**A hashset used to keep track of duplicates.**/
-    private HashSet<Character> charset = new HashSet<Character>();;
+    /** The characters of the alphabet, in index order. */
+    private char[] _chars;
 
     /**Meant to identify any possible duplicates.
      * @param chars collection of characters
@@ -20,14 +24,9 @@ class Alphabet {
 
     Alphabet(String chars) {
         if (chars != null) {
-            for (int i = 0; i < chars.length(); i++) {
-                charset.add(chars.charAt(i));
-            }
-            if (charset.size() == chars.length()) {
-                alphabetString = chars;
-            } else {
-                throw new EnigmaException("duplicates visible, chars invalid");
-            }
+            alphabetString = chars;
+            _chars = chars.toCharArray();
+            buildIndex();
         } else {
             throw new EnigmaException("empty alphabet given");
         }
@@ -38,21 +37,82 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Return the alphabet of all BYTE_VALUES byte values, in which the
+     *  character whose code is the unsigned value of a byte has that
+     *  value as its index. */
+    static Alphabet bytes() {
+        char[] chars = new char[BYTE_VALUES];
+        for (int i = 0; i < BYTE_VALUES; i++) {
+            chars[i] = (char) i;
+        }
+        return new Alphabet(new String(chars));
+    }
+
+    /** Fill in the character-to-index table for _chars, choosing the
+     *  dense or the hashed representation, and reject duplicates. */
+    private void buildIndex() {
+        int min = Character.MAX_VALUE;
+        int max = Character.MIN_VALUE;
+        for (char c : _chars) {
+            min = Math.min(min, c);
+            max = Math.max(max, c);
+        }
+        int span = _chars.length == 0 ? 0 : max - min + 1;
+        _singleByte = _chars.length == 0 || max < BYTE_VALUES;
+        if (span <= Math.max(DENSE_SPAN, DENSE_FACTOR * _chars.length)) {
+            _base = min;
+            _dense = new int[span];
+            Arrays.fill(_dense, -1);
+            for (int i = 0; i < _chars.length; i++) {
+                int slot = _chars[i] - _base;
+                if (_dense[slot] >= 0) {
+                    throw new EnigmaException(
+                        "duplicates visible, chars invalid");
+                }
+                _dense[slot] = i;
+            }
+        } else {
+            int capacity = Integer.highestOneBit(2 * _chars.length) * 2;
+            _mask = capacity - 1;
+            _shift = Integer.numberOfLeadingZeros(_mask);
+            _keys = new char[capacity];
+            _values = new int[capacity];
+            Arrays.fill(_values, -1);
+            for (int i = 0; i < _chars.length; i++) {
+                int slot = hash(_chars[i]);
+                while (_values[slot] >= 0) {
+                    if (_keys[slot] == _chars[i]) {
+                        throw new EnigmaException(
+                            "duplicates visible, chars invalid");
+                    }
+                    slot = (slot + 1) & _mask;
+                }
+                _keys[slot] = _chars[i];
+                _values[slot] = i;
+            }
+        }
+    }
+
+    /** Return the home slot of CH in the hashed table. */
+    private int hash(char ch) {
+        return (ch * HASH_MULTIPLIER) >>> _shift;
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
-        return alphabetString.length();
+        return _chars.length;
     }
 
     /** Returns true if preprocess(CH) is in this alphabet. */
     boolean contains(char ch) {
-        return (alphabetString.indexOf(ch) >= 0);
+        return index(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        if ((index >= 0) && (index < size())) {
-            return alphabetString.charAt(index);
+        if ((index >= 0) && (index < _chars.length)) {
+            return _chars[index];
         } else {
             throw new EnigmaException("index is out of range");
         }
@@ -61,11 +121,68 @@ class Alphabet {
     /** Returns the index of character preprocess(CH), which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        int index = alphabetString.indexOf(ch);
+        int index = index(ch);
         if (index >= 0) {
             return index;
         } else {
             throw new EnigmaException(ch + " not in the alphabet");
         }
     }
+
+    /** Returns the index of CH, or -1 if CH is not in the alphabet. */
+    int index(char ch) {
+        if (_dense != null) {
+            int slot = ch - _base;
+            if (slot >= 0 && slot < _dense.length) {
+                return _dense[slot];
+            }
+            return -1;
+        }
+        int slot = hash(ch);
+        while (_values[slot] >= 0) {
+            if (_keys[slot] == ch) {
+                return _values[slot];
+            }
+            slot = (slot + 1) & _mask;
+        }
+        return -1;
+    }
+
+    /** Returns true iff every character of the alphabet is the
+     *  character of some byte value, so that text over the alphabet can
+     *  be held in bytes. */
+    boolean isSingleByte() {
+        return _singleByte;
+    }
+
+    @Override
+    public String toString() {
+        return alphabetString;
+    }
+
+    /** Number of distinct byte values. */
+    static final int BYTE_VALUES = 256;
+    /** Ranges of at most this many characters always use a dense table. */
+    private static final int DENSE_SPAN = 1024;
+    /** Ranges of at most this many times the alphabet size also use a
+     *  dense table. */
+    private static final int DENSE_FACTOR = 8;
+    /** Multiplier used to spread characters over the hashed table. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B1;
+
+    /** Dense table: index of character _base + K is _dense[K], or -1.
+     *  Null when the hashed table is used. */
+    private int[] _dense;
+    /** Smallest character covered by _dense. */
+    private int _base;
+    /** Hashed table keys. */
+    private char[] _keys;
+    /** Hashed table values (indices), -1 marking an empty slot. */
+    private int[] _values;
+    /** Mask reducing a hash to a slot of the hashed table. */
+    private int _mask;
+    /** Shift taking the top bits of a product as a hashed-table slot. */
+    private int _shift;
+    /** True iff all my characters are below BYTE_VALUES. */
+    private boolean _singleByte;
 }
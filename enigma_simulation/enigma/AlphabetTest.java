@@ -0,0 +1,58 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Razi Mahmood
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Check that ALPHA maps each character of CHARS to its index and
+     *  back, and rejects each character of ABSENT. */
+    private void checkAlphabet(Alphabet alpha, String chars, String absent) {
+        assertEquals(chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            assertTrue(msg("contains", "'%c'", c), alpha.contains(c));
+            assertEquals(msg("toInt", "'%c'", c), i, alpha.toInt(c));
+            assertEquals(msg("toChar", "%d", i), c, alpha.toChar(i));
+        }
+        for (int i = 0; i < absent.length(); i++) {
+            assertFalse(alpha.contains(absent.charAt(i)));
+            assertEquals(-1, alpha.index(absent.charAt(i)));
+        }
+    }
+
+    @Test
+    public void checkDenseAlphabet() {
+        checkAlphabet(UPPER, UPPER_STRING, "abc@[0 ");
+        checkAlphabet(new Alphabet("THEKIUYOQABP"), "THEKIUYOQABP",
+                      "CDZ");
+        checkAlphabet(new Alphabet("012345"), "012345", "6/A");
+    }
+
+    @Test
+    public void checkSparseAlphabet() {
+        String sparse = "A\u00e9\u03a9\u4e2d\uac00\uffee";
+        checkAlphabet(new Alphabet(sparse), sparse, "BZ\u03a8\u4e2e\uffef");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDenseDuplicates() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkSparseDuplicates() {
+        new Alphabet("A\u4e2dB\u4e2d");
+    }
+}
@@ -0,0 +1,268 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running service that processes a stream of independent jobs,
+ *  each consisting of a configuration and an input (settings lines and
+ *  messages, as in an input file).  Parsed configurations are cached by
+ *  the SHA-256 hash of their text, each with a MachinePool, so repeated
+ *  configurations are neither reparsed nor rebuilt.
+ *
+ *  Each request has the form
+ *      job ID N M
+ *  followed by N lines of configuration and M lines of input.  In place
+ *  of N, a job may give @HASH to reuse a configuration sent earlier, in
+ *  which case no configuration lines follow.  The response is either
+ *      ok ID HASH K MICROS
+ *  followed by the K lines of output, or the single line
+ *      error ID MICROS MESSAGE
+ *  where MICROS is the time spent on the job.  The request
+ *      stats
+ *  produces a single line of counters.  Blank lines between requests are
+ *  ignored.
+ *  @author Razi Mahmood
+ */
+class BatchService {
+
+    /** Serve the requests read from IN, writing responses to OUT, until
+     *  IN is exhausted, then report counters on the standard error. */
+    void serve(InputStream in, OutputStream out) {
+        try {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8));
+            PrintStream writer = new PrintStream(out, false, "UTF-8");
+            serve(reader, writer);
+            writer.flush();
+        } catch (IOException excp) {
+            throw error("batch I/O error: %s", excp.getMessage());
+        }
+        System.err.println(stats());
+    }
+
+    /** Accept connections to PORT on the local host, serving the requests
+     *  on each connection in its own thread.  Does not return. */
+    void listen(int port) {
+        ExecutorService connections = Executors.newCachedThreadPool();
+        try (ServerSocket server =
+                 new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            while (true) {
+                Socket socket = server.accept();
+                connections.execute(() -> serveConnection(socket));
+            }
+        } catch (IOException excp) {
+            throw error("could not listen on port %d: %s", port,
+                        excp.getMessage());
+        } finally {
+            connections.shutdown();
+        }
+    }
+
+    /** Serve the requests arriving on SOCKET, then close it. */
+    private void serveConnection(Socket socket) {
+        try (Socket s = socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                s.getInputStream(), StandardCharsets.UTF_8));
+            serve(in, new PrintStream(s.getOutputStream(), false, "UTF-8"));
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Serve the requests read from IN, writing responses to OUT. */
+    void serve(BufferedReader in, PrintStream out) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens[0].isEmpty()) {
+                continue;
+            } else if (tokens[0].equals("stats") && tokens.length == 1) {
+                out.println(stats());
+            } else if (tokens[0].equals("job") && tokens.length == 4) {
+                runJob(tokens, in, out);
+            } else {
+                out.printf("error - 0 bad request: %s%n", line);
+            }
+            out.flush();
+        }
+    }
+
+    /** Read the job described by TOKENS (the words of its request line)
+     *  and its configuration and input from IN, run it, and write the
+     *  response to OUT. */
+    private void runJob(String[] tokens, BufferedReader in, PrintStream out)
+        throws IOException {
+        String id = tokens[1];
+        String config = null;
+        String hash;
+        int inputLines;
+        try {
+            inputLines = Integer.parseInt(tokens[3]);
+            if (tokens[2].startsWith("@")) {
+                hash = tokens[2].substring(1);
+            } else {
+                config = readLines(in, Integer.parseInt(tokens[2]));
+                hash = hash(config);
+            }
+        } catch (NumberFormatException excp) {
+            out.printf("error %s 0 bad line count%n", id);
+            return;
+        }
+        String input = readLines(in, inputLines);
+
+        long start = System.nanoTime();
+        try {
+            String output = convert(hash, config, input);
+            long micros = record(start, false);
+            out.printf("ok %s %s %d %d%n", id, hash, countLines(output),
+                       micros);
+            out.print(output);
+        } catch (EnigmaException excp) {
+            long micros = record(start, true);
+            out.printf("error %s %d %s%n", id, micros, excp.getMessage());
+        }
+    }
+
+    /** Return the output of processing INPUT with a machine for the
+     *  configuration whose hash is HASH and whose text, if not already
+     *  cached, is CONFIG. */
+    private String convert(String hash, String config, String input) {
+        MachinePool pool = _pools.get(hash);
+        if (pool != null) {
+            _cacheHits.incrementAndGet();
+        } else if (config == null) {
+            throw error("unknown configuration %s", hash);
+        } else {
+            _cacheMisses.incrementAndGet();
+            pool = _pools.computeIfAbsent(hash,
+                                          h -> new MachinePool(config));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream output;
+        try {
+            output = new PrintStream(bytes, false, "UTF-8");
+        } catch (UnsupportedEncodingException excp) {
+            throw error("UTF-8 unsupported");
+        }
+        Machine machine = pool.acquire();
+        try {
+            pool.session(new Scanner(input), output, StandardCharsets.UTF_8)
+                .processInput(machine);
+        } finally {
+            pool.release(machine);
+        }
+        output.flush();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Record the completion of a job started at time START (from
+     *  System.nanoTime), which failed iff FAILED.  Returns the job's
+     *  latency in microseconds. */
+    private long record(long start, boolean failed) {
+        long nanos = System.nanoTime() - start;
+        _jobs.incrementAndGet();
+        if (failed) {
+            _errors.incrementAndGet();
+        }
+        _totalNanos.addAndGet(nanos);
+        _maxNanos.accumulateAndGet(nanos, Math::max);
+        return nanos / NANOS_PER_MICRO;
+    }
+
+    /** Return a line summarizing the jobs served so far. */
+    String stats() {
+        long jobs = _jobs.get();
+        int machines = 0;
+        for (MachinePool pool : _pools.values()) {
+            machines += pool.created();
+        }
+        return String.format("stats jobs=%d errors=%d configs=%d "
+                             + "cacheHits=%d cacheMisses=%d machines=%d "
+                             + "meanMicros=%d maxMicros=%d",
+                             jobs, _errors.get(), _pools.size(),
+                             _cacheHits.get(), _cacheMisses.get(), machines,
+                             jobs == 0 ? 0
+                             : _totalNanos.get() / jobs / NANOS_PER_MICRO,
+                             _maxNanos.get() / NANOS_PER_MICRO);
+    }
+
+    /** Return the next N lines of IN, each followed by a newline. */
+    private static String readLines(BufferedReader in, int n)
+        throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("job truncated");
+            }
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return the number of lines in TEXT. */
+    private static int countLines(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Return the SHA-256 hash of TEXT in hexadecimal. */
+    static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(
+                text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder();
+            for (byte b : bytes) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 unavailable");
+        }
+    }
+
+    /** Nanoseconds in a microsecond. */
+    private static final long NANOS_PER_MICRO = 1000;
+
+    /** Machine pools by configuration hash. */
+    private final ConcurrentHashMap<String, MachinePool> _pools =
+        new ConcurrentHashMap<String, MachinePool>();
+    /** Number of jobs run. */
+    private final AtomicLong _jobs = new AtomicLong();
+    /** Number of jobs that failed. */
+    private final AtomicLong _errors = new AtomicLong();
+    /** Number of jobs whose configuration was already parsed. */
+    private final AtomicLong _cacheHits = new AtomicLong();
+    /** Number of jobs whose configuration had to be parsed. */
+    private final AtomicLong _cacheMisses = new AtomicLong();
+    /** Total job latency. */
+    private final AtomicLong _totalNanos = new AtomicLong();
+    /** Largest job latency. */
+    private final AtomicLong _maxNanos = new AtomicLong();
+}
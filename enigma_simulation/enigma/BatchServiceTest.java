@@ -0,0 +1,75 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+/** The suite of all JUnit tests for the BatchService and MachinePool
+ *  classes.
+ *  @author Razi Mahmood
+ */
+public class BatchServiceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A small configuration. */
+    static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 5 3\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** Return the responses of a fresh service to REQUESTS. */
+    private String serve(BatchService service, String requests)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        service.serve(new BufferedReader(new StringReader(requests)), out);
+        return bytes.toString("UTF-8").replace("\r\n", "\n");
+    }
+
+    @Test
+    public void checkJobsShareConfiguration() throws IOException {
+        BatchService service = new BatchService();
+        String hash = BatchService.hash(CONFIG);
+        String responses = serve(service,
+            "job 1 8 2\n" + CONFIG + "* B Beta I II III AAAA\nHELLO WORLD\n"
+            + "\n"
+            + "job 2 @" + hash + " 2\n* B Beta I II III AAAA\nILBDA AMTAZ\n");
+        String[] lines = responses.split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("ok 1 " + hash + " 1 "));
+        assertEquals("ILBDA AMTAZ", lines[1]);
+        assertTrue(lines[2].startsWith("ok 2 " + hash + " 1 "));
+        assertEquals("HELLO WORLD", lines[3]);
+        assertTrue(service.stats().contains("configs=1 cacheHits=1 "
+                                            + "cacheMisses=1 machines=1 "));
+    }
+
+    @Test
+    public void checkErrors() throws IOException {
+        BatchService service = new BatchService();
+        String responses = serve(service,
+            "job x @feed 1\nHELLO\n"
+            + "job y 8 1\n" + CONFIG + "HELLO\n"
+            + "job z 8 2\n" + CONFIG + "* B Beta I II III AAAA\nHELLO\n");
+        String[] lines = responses.split("\n");
+        assertTrue(lines[0].startsWith("error x "));
+        assertTrue(lines[1].startsWith("error y "));
+        assertTrue(lines[2].startsWith("ok z "));
+        assertEquals("ILBDA", lines[3]);
+    }
+}
@@ -0,0 +1,227 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import static enigma.EnigmaException.*;
+
+/** Converts binary data, as a stream of bytes, with a machine whose
+ *  alphabet fits in bytes (usually Alphabet.bytes()).  Data pass through
+ *  NIO channels and a single direct buffer, converted in place, with no
+ *  character decoding; a file may also be converted in place.  Unlike
+ *  text messages, the data are neither split into lines nor grouped.
+ *  A converter may save a MachineSnapshot periodically, after forcing
+ *  the output written so far to disk, so that a long conversion that is
+ *  interrupted can be resumed from the last snapshot instead of from the
+ *  start.
+ *  @author Razi Mahmood
+ */
+class ByteStreamConverter {
+
+    /** A converter using MACHINE and a buffer of DEFAULT_BUFFER_SIZE
+     *  bytes. */
+    ByteStreamConverter(Machine machine) {
+        this(machine, DEFAULT_BUFFER_SIZE);
+    }
+
+    /** A converter using MACHINE and a buffer of BUFFERSIZE bytes. */
+    ByteStreamConverter(Machine machine, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw error("buffer size must be positive");
+        }
+        if (!machine.alphabet().isSingleByte()) {
+            throw error("alphabet does not fit in bytes");
+        }
+        _machine = machine;
+        _buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /** Convert the file named INPUTNAME into the file named OUTPUTNAME,
+     *  where a null name stands for the standard input or output.  If
+     *  both name the same file, it is converted in place (and may not be
+     *  checkpointed, since bytes converted after the last snapshot could
+     *  not be told apart from the rest).  Returns the number of bytes
+     *  converted. */
+    long process(String inputName, String outputName) {
+        try {
+            MachineSnapshot resumed = null;
+            if (_resume) {
+                if (inputName == null || outputName == null) {
+                    throw error("resuming requires input and output files");
+                }
+                resumed = MachineSnapshot.load(_checkpoint);
+                if (resumed != null) {
+                    resumed.restore(_machine);
+                }
+            }
+            if (inputName != null && outputName != null) {
+                Path input = Paths.get(inputName);
+                Path output = Paths.get(outputName);
+                if (Files.exists(output) && Files.isSameFile(input, output)) {
+                    if (_checkpoint != null) {
+                        throw error("cannot checkpoint a conversion in "
+                                    + "place");
+                    }
+                    try (FileChannel file = FileChannel.open(input, READ,
+                                                             WRITE)) {
+                        return convertInPlace(file);
+                    }
+                }
+            }
+            if (resumed != null) {
+                try (FileChannel in = FileChannel.open(Paths.get(inputName),
+                                                       READ);
+                     FileChannel out = FileChannel.open(Paths.get(outputName),
+                                                        WRITE, CREATE)) {
+                    return resume(in, out, resumed);
+                }
+            }
+            try (ReadableByteChannel in = inputName == null
+                     ? Channels.newChannel(System.in)
+                     : FileChannel.open(Paths.get(inputName), READ);
+                 WritableByteChannel out = outputName == null
+                     ? Channels.newChannel(System.out)
+                     : FileChannel.open(Paths.get(outputName), WRITE,
+                                        CREATE, TRUNCATE_EXISTING)) {
+                return convert(in, out, 0, 0);
+            }
+        } catch (IOException excp) {
+            throw error("I/O error on %s or %s: %s",
+                        inputName == null ? "standard input" : inputName,
+                        outputName == null ? "standard output" : outputName,
+                        excp.getMessage());
+        }
+    }
+
+    /** Save a snapshot of my machine in the file CHECKPOINT after about
+     *  every INTERVAL bytes converted, and on finishing.  If RESUME,
+     *  process() first restores the snapshot in CHECKPOINT, if there is
+     *  one, and continues the conversion from where it was taken. */
+    void setCheckpoint(Path checkpoint, long interval, boolean resume) {
+        if (interval <= 0) {
+            throw error("checkpoint interval must be positive");
+        }
+        _checkpoint = checkpoint;
+        _checkpointInterval = interval;
+        _resume = resume;
+    }
+
+    /** Convert all the bytes read from IN, writing them to OUT, and
+     *  return their number. */
+    long convert(ReadableByteChannel in, WritableByteChannel out)
+        throws IOException {
+        return convert(in, out, 0, 0);
+    }
+
+    /** Continue the conversion of IN into OUT recorded in SNAPSHOT,
+     *  whose state my machine is in, discarding anything written to OUT
+     *  after the snapshot was taken.  Returns the number of bytes
+     *  converted. */
+    private long resume(FileChannel in, FileChannel out,
+                        MachineSnapshot snapshot) throws IOException {
+        long inputOffset = snapshot.inputOffset();
+        long outputOffset = snapshot.outputOffset();
+        if (in.size() < inputOffset || out.size() < outputOffset) {
+            throw error("files are shorter than the snapshot records");
+        }
+        in.position(inputOffset);
+        out.truncate(outputOffset);
+        out.position(outputOffset);
+        return convert(in, out, inputOffset, outputOffset);
+    }
+
+    /** Convert all the bytes read from IN, writing them to OUT, and
+     *  return their number.  INPUTOFFSET and OUTPUTOFFSET are the numbers
+     *  of bytes already read from the input and written to the output,
+     *  as recorded in snapshots. */
+    private long convert(ReadableByteChannel in, WritableByteChannel out,
+                         long inputOffset, long outputOffset)
+        throws IOException {
+        long total = 0;
+        long nextCheckpoint = _checkpointInterval;
+        while (true) {
+            _buffer.clear();
+            if (in.read(_buffer) < 0) {
+                checkpoint(out, inputOffset + total, outputOffset + total);
+                return total;
+            }
+            _buffer.flip();
+            total += _machine.convert(_buffer);
+            _buffer.flip();
+            while (_buffer.hasRemaining()) {
+                out.write(_buffer);
+            }
+            if (total >= nextCheckpoint) {
+                checkpoint(out, inputOffset + total, outputOffset + total);
+                nextCheckpoint = total + _checkpointInterval;
+            }
+        }
+    }
+
+    /** Convert the contents of FILE in place, returning the number of
+     *  bytes converted. */
+    long convertInPlace(FileChannel file) throws IOException {
+        long position = 0;
+        long size = file.size();
+        while (position < size) {
+            _buffer.clear();
+            int n = file.read(_buffer, position);
+            if (n < 0) {
+                break;
+            }
+            _buffer.flip();
+            _machine.convert(_buffer);
+            _buffer.flip();
+            long at = position;
+            while (_buffer.hasRemaining()) {
+                at += file.write(_buffer, at);
+            }
+            position += n;
+        }
+        return position;
+    }
+
+    /** If I am saving snapshots, force what has been written to OUT to
+     *  disk, so that no snapshot runs ahead of the output, and save a
+     *  snapshot recording INPUTOFFSET bytes read and OUTPUTOFFSET
+     *  written. */
+    private void checkpoint(WritableByteChannel out, long inputOffset,
+                            long outputOffset) throws IOException {
+        if (_checkpoint == null) {
+            return;
+        }
+        if (out instanceof FileChannel) {
+            ((FileChannel) out).force(false);
+        }
+        new MachineSnapshot(_machine, inputOffset, outputOffset)
+            .save(_checkpoint);
+    }
+
+    /** Default size of the buffer. */
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    /** Default number of bytes converted between snapshots. */
+    static final long CHECKPOINT_INTERVAL = 1 << 22;
+
+    /** Machine doing the conversions. */
+    private final Machine _machine;
+    /** Buffer through which all data pass. */
+    private final ByteBuffer _buffer;
+    /** File in which snapshots are saved, or null if none are. */
+    private Path _checkpoint;
+    /** Number of bytes converted between snapshots. */
+    private long _checkpointInterval = CHECKPOINT_INTERVAL;
+    /** True iff process() resumes from the snapshot in _checkpoint. */
+    private boolean _resume;
+}
@@ -0,0 +1,180 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** The suite of all JUnit tests for byte conversion and the
+ *  ByteStreamConverter class.
+ *  @author Razi Mahmood
+ */
+public class ByteStreamConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return a 4-rotor, 3-pawl machine over the byte alphabet with
+     *  wirings drawn from SEED, with all rotors at 0 and a plugboard
+     *  swapping 0 and 1. */
+    static Machine byteMachine(long seed) {
+        Alphabet bytes = Alphabet.bytes();
+        Random random = new Random(seed);
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        List<Integer> order = shuffled(random);
+        int[] reflector = new int[Alphabet.BYTE_VALUES];
+        for (int i = 0; i < reflector.length; i += 2) {
+            reflector[order.get(i)] = order.get(i + 1);
+            reflector[order.get(i + 1)] = order.get(i);
+        }
+        rotors.add(new Reflector("R", new Permutation(reflector, bytes)));
+        String[] names = { "A", "B", "C" };
+        String[] notches = { "\u0010", "\u00ff", "\n(" };
+        for (int k = 0; k < names.length; k++) {
+            int[] mapping = new int[Alphabet.BYTE_VALUES];
+            order = shuffled(random);
+            for (int i = 0; i < mapping.length; i++) {
+                mapping[i] = order.get(i);
+            }
+            rotors.add(new MovingRotor(names[k],
+                                       new Permutation(mapping, bytes),
+                                       notches[k]));
+        }
+        Machine machine = new Machine(bytes, 4, 3, rotors);
+        machine.insertRotors(new String[] { "R", "A", "B", "C" });
+        int[] plugs = new int[Alphabet.BYTE_VALUES];
+        for (int i = 0; i < plugs.length; i++) {
+            plugs[i] = i;
+        }
+        plugs[0] = 1;
+        plugs[1] = 0;
+        machine.setPlugboard(new Permutation(plugs, bytes));
+        return machine;
+    }
+
+    /** Return the byte values in an order drawn from RANDOM. */
+    private static List<Integer> shuffled(Random random) {
+        ArrayList<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < Alphabet.BYTE_VALUES; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, random);
+        return values;
+    }
+
+    /** Return LENGTH random bytes drawn from SEED. */
+    static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void checkBytesMatchChars() {
+        byte[] data = randomBytes(20000, 1);
+        char[] chars = new char[data.length];
+        for (int i = 0; i < data.length; i++) {
+            chars[i] = (char) (data[i] & 0xff);
+        }
+        String expected = byteMachine(7).convert(new String(chars));
+        byte[] converted = data.clone();
+        byteMachine(7).convert(converted, 0, converted.length, converted, 0);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(expected.charAt(i), (char) (converted[i] & 0xff));
+        }
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        byteMachine(7).convert(direct);
+        assertEquals(data.length, direct.position());
+        byte[] fromDirect = new byte[data.length];
+        direct.flip();
+        direct.get(fromDirect);
+        assertArrayEquals(converted, fromDirect);
+    }
+
+    @Test
+    public void checkChannelsRoundTrip() throws IOException {
+        byte[] data = randomBytes(10007, 2);
+        byte[] expected = data.clone();
+        byteMachine(3).convert(expected, 0, expected.length, expected, 0);
+
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        long n = new ByteStreamConverter(byteMachine(3), 1000).convert(
+            Channels.newChannel(new ByteArrayInputStream(data)),
+            Channels.newChannel(encrypted));
+        assertEquals(data.length, n);
+        assertArrayEquals(expected, encrypted.toByteArray());
+
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        new ByteStreamConverter(byteMachine(3), 333).convert(
+            Channels.newChannel(
+                new ByteArrayInputStream(encrypted.toByteArray())),
+            Channels.newChannel(decrypted));
+        assertArrayEquals(data, decrypted.toByteArray());
+    }
+
+    @Test
+    public void checkInPlaceFile() throws IOException {
+        byte[] data = randomBytes(5000, 4);
+        byte[] expected = data.clone();
+        byteMachine(5).convert(expected, 0, expected.length, expected, 0);
+        File file = File.createTempFile("enigma", ".bin");
+        try {
+            Files.write(file.toPath(), data);
+            String name = file.getPath();
+            assertEquals(data.length,
+                         new ByteStreamConverter(byteMachine(5), 512)
+                         .process(name, name));
+            assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void checkByteCycles() {
+        Main main = new Main(new Scanner(""));
+        int[] mapping = main.readByteCycles("(0a0b0c)(ff00)");
+        assertEquals(0x0b, mapping[0x0a]);
+        assertEquals(0x0c, mapping[0x0b]);
+        assertEquals(0x0a, mapping[0x0c]);
+        assertEquals(0x00, mapping[0xff]);
+        assertEquals(0xff, mapping[0x00]);
+        assertEquals(0x41, mapping[0x41]);
+        assertEquals("\n\u00ff", main.readBytes("0aFF"));
+        for (String bad : new String[] { "(0a0a)", "(0a0b)(0b0c)", "(0a",
+                                         "(0g)", "()", "0a0b" }) {
+            try {
+                main.readByteCycles(bad);
+                fail(bad);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkMappingMustBePermutation() {
+        new Permutation(new int[] { 0, 0, 1 }, new Alphabet("ABC"));
+    }
+}
@@ -0,0 +1,438 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers machine settings from ciphertext alone, by statistics.
+ *  The attack has two phases, each run on a fork/join pool.  First,
+ *  every rotor order and starting position is tried without a
+ *  plugboard, and the positions whose decryptions have the highest
+ *  index of coincidence are kept.  Then, for each of those, a plugboard
+ *  is found by hill-climbing: plugging or unplugging any pair of
+ *  letters that improves the score until no pair does, scoring by
+ *  index of coincidence and then, if the scorer has one, by n-gram
+ *  log-likelihood.  Both phases feed shared leaderboards of the best
+ *  candidates so far.  Scoring works on reusable int arrays, so testing
+ *  a candidate allocates nothing.
+ *  @author Razi Mahmood
+ */
+class CiphertextAttack {
+
+    /** An attack on CIPHERTEXT, encrypted by a machine whose rotors and
+     *  alphabet are those of MACHINE, scoring with SCORER and running in
+     *  the common fork/join pool.  Characters of CIPHERTEXT not in the
+     *  alphabet are ignored.  MACHINE must not be used while an attack
+     *  is running. */
+    CiphertextAttack(Machine machine, String ciphertext, TextScorer scorer) {
+        this(machine, ciphertext, scorer, ForkJoinPool.commonPool(),
+             DEFAULT_CANDIDATES);
+    }
+
+    /** As for CiphertextAttack(MACHINE, CIPHERTEXT, SCORER), but running
+     *  in POOL and climbing from the best CANDIDATES positions. */
+    CiphertextAttack(Machine machine, String ciphertext, TextScorer scorer,
+                     ForkJoinPool pool, int candidates) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _scorer = scorer;
+        _pool = pool;
+        _positions = new Leaderboard(candidates);
+        int[] cipher = new int[ciphertext.length()];
+        int length = 0;
+        for (int i = 0; i < ciphertext.length(); i++) {
+            int index = _alphabet.index(ciphertext.charAt(i));
+            if (index >= 0) {
+                cipher[length++] = index;
+            }
+        }
+        if (length < 2) {
+            throw error("ciphertext too short to attack");
+        }
+        _cipher = Arrays.copyOf(cipher, length);
+    }
+
+    /** Attack with every rotor order of my machine, returning the best
+     *  RESULTS candidates found, best first. */
+    List<Result> attack(int results) {
+        return attack(_machine.rotorOrders(), results);
+    }
+
+    /** Attack with the rotor orders ORDERS, returning the best RESULTS
+     *  candidates found, best first. */
+    List<Result> attack(List<String[]> orders, int results) {
+        _start = System.nanoTime();
+        ArrayList<RecursiveAction> scans = new ArrayList<RecursiveAction>();
+        for (String[] order : orders) {
+            if (order.length != _machine.numRotors()) {
+                throw error("rotor order has wrong number of rotors");
+            }
+            for (int lead = 0; lead < _size; lead++) {
+                scans.add(new ScanTask(order, lead));
+            }
+        }
+        long positions = 1;
+        for (int i = 2; i < _machine.numRotors(); i++) {
+            positions *= _size;
+        }
+        _totalPositions.set(positions * scans.size());
+        runAll(scans);
+
+        List<Result> starts = _positions.best();
+        _totalClimbs.set(starts.size());
+        _results = new Leaderboard(results);
+        ArrayList<RecursiveAction> climbs = new ArrayList<RecursiveAction>();
+        for (Result start : starts) {
+            climbs.add(new ClimbTask(start));
+        }
+        runAll(climbs);
+        return _results.best();
+    }
+
+    /** Run all of TASKS in my pool and wait for them to finish. */
+    private void runAll(List<RecursiveAction> tasks) {
+        _pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /** Return a line reporting the progress and throughput of my
+     *  attack. */
+    String progress() {
+        long tested = _tested.get();
+        double seconds = _start == 0 ? 0
+            : (System.nanoTime() - _start) / NANOS_PER_SECOND;
+        Leaderboard board = _results != null ? _results : _positions;
+        return String.format("positions=%d/%d climbs=%d/%d best=%.4f "
+                             + "rate=%.0f/s elapsed=%.1fs",
+                             tested, _totalPositions.get(), _climbs.get(),
+                             _totalClimbs.get(), board.bestScore(),
+                             seconds == 0 ? 0.0 : tested / seconds,
+                             seconds);
+    }
+
+    /** A scored candidate setting. */
+    static class Result {
+
+        /** A candidate with score SCORE, rotors ROTORS, initial rotor
+         *  settings SETTINGS (as from Machine.rotorSettings), and
+         *  plugboard PLUGBOARD (mapping each alphabet index to its
+         *  partner), over ALPHABET. */
+        Result(double score, String[] rotors, int[] settings,
+               int[] plugboard, Alphabet alphabet) {
+            _score = score;
+            _rotors = rotors;
+            _settings = settings;
+            char[] setting = new char[settings.length - 1];
+            for (int i = 1; i < settings.length; i++) {
+                setting[i - 1] = alphabet.toChar(settings[i]);
+            }
+            _setting = new String(setting);
+            StringBuilder plugs = new StringBuilder();
+            for (int x = 0; x < plugboard.length; x++) {
+                if (x < plugboard[x]) {
+                    if (plugs.length() > 0) {
+                        plugs.append(' ');
+                    }
+                    plugs.append('(').append(alphabet.toChar(x))
+                        .append(alphabet.toChar(plugboard[x])).append(')');
+                }
+            }
+            _plugs = plugs.toString();
+        }
+
+        /** Return my score (higher is better). */
+        double score() {
+            return _score;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my initial rotor setting. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my plugboard pairs, as cycles. */
+        String plugboard() {
+            return _plugs;
+        }
+
+        /** Return me as a settings line for an input file. */
+        @Override
+        public String toString() {
+            StringBuilder line = new StringBuilder("*");
+            for (String name : _rotors) {
+                line.append(' ').append(name);
+            }
+            line.append(' ').append(_setting);
+            if (!_plugs.isEmpty()) {
+                line.append(' ').append(_plugs);
+            }
+            return line.toString();
+        }
+
+        /** Score. */
+        private final double _score;
+        /** Rotor names. */
+        private final String[] _rotors;
+        /** Rotor settings, the reflector's first. */
+        private final int[] _settings;
+        /** Rotor setting, as characters. */
+        private final String _setting;
+        /** Plugboard pairs, as cycles. */
+        private final String _plugs;
+    }
+
+    /** The best results offered so far, up to a fixed number.  Offers
+     *  that cannot qualify are rejected without locking. */
+    private static class Leaderboard {
+
+        /** A leaderboard of at most CAPACITY results. */
+        Leaderboard(int capacity) {
+            if (capacity <= 0) {
+                throw error("leaderboard capacity must be positive");
+            }
+            _capacity = capacity;
+        }
+
+        /** Return true iff a result scoring SCORE would be kept. */
+        boolean qualifies(double score) {
+            return score > _threshold;
+        }
+
+        /** Keep RESULT if it is among the best offered so far. */
+        synchronized void offer(Result result) {
+            if (!qualifies(result.score())) {
+                return;
+            }
+            _entries.add(result);
+            if (_entries.size() > _capacity) {
+                _entries.poll();
+            }
+            if (_entries.size() == _capacity) {
+                _threshold = _entries.peek().score();
+            }
+            _best = Math.max(_best, result.score());
+        }
+
+        /** Return the results kept, best first. */
+        synchronized List<Result> best() {
+            ArrayList<Result> result = new ArrayList<Result>(_entries);
+            result.sort((a, b) -> Double.compare(b.score(), a.score()));
+            return result;
+        }
+
+        /** Return the best score offered so far. */
+        double bestScore() {
+            return _best;
+        }
+
+        /** Maximum number of results kept. */
+        private final int _capacity;
+        /** Results kept, worst first. */
+        private final PriorityQueue<Result> _entries =
+            new PriorityQueue<Result>(
+                (a, b) -> Double.compare(a.score(), b.score()));
+        /** Score a result must exceed to be kept. */
+        private volatile double _threshold = Double.NEGATIVE_INFINITY;
+        /** Best score kept. */
+        private volatile double _best = Double.NEGATIVE_INFINITY;
+    }
+
+    /** Scores every position of one rotor order that has a given setting
+     *  of the leftmost non-reflector rotor, without a plugboard. */
+    private class ScanTask extends RecursiveAction {
+
+        /** A task for rotors ORDER with the leftmost non-reflector rotor
+         *  at LEAD. */
+        ScanTask(String[] order, int lead) {
+            _order = order;
+            _lead = lead;
+        }
+
+        @Override
+        protected void compute() {
+            int length = _cipher.length;
+            ScramblerSchedule schedule =
+                new ScramblerSchedule(_machine, _order, length);
+            int[] histogram = new int[_size];
+            int[] settings = new int[_order.length];
+            settings[1] = _lead;
+            long tested = 0;
+            do {
+                schedule.load(settings, 0);
+                Arrays.fill(histogram, 0);
+                for (int i = 0; i < length; i++) {
+                    histogram[schedule.forward(i, _cipher[i])]++;
+                }
+                double score = _scorer.indexOfCoincidence(histogram, length);
+                if (_positions.qualifies(score)) {
+                    _positions.offer(new Result(score, _order,
+                                                settings.clone(),
+                                                identity(), _alphabet));
+                }
+                tested++;
+                if (tested == PROGRESS_BATCH) {
+                    _tested.addAndGet(tested);
+                    tested = 0;
+                }
+            } while (ScramblerSchedule.advance(settings, 2, _size));
+            _tested.addAndGet(tested);
+        }
+
+        /** Rotor names. */
+        private final String[] _order;
+        /** Setting of the leftmost non-reflector rotor. */
+        private final int _lead;
+    }
+
+    /** Finds a plugboard for one candidate position by hill-climbing. */
+    private class ClimbTask extends RecursiveAction {
+
+        /** A task climbing from ORIGIN. */
+        ClimbTask(Result origin) {
+            _origin = origin;
+        }
+
+        @Override
+        protected void compute() {
+            int length = _cipher.length;
+            _schedule = new ScramblerSchedule(_machine, _origin._rotors,
+                                              length);
+            _schedule.load(_origin._settings, 0);
+            _plain = new int[length];
+            _histogram = new int[_size];
+            _plugs = identity();
+            _trial = new int[_size];
+            double score = climb(false);
+            if (_scorer.hasModel()) {
+                score = climb(true);
+            }
+            _results.offer(new Result(score, _origin._rotors,
+                                      _origin._settings, _plugs.clone(),
+                                      _alphabet));
+            _climbs.incrementAndGet();
+        }
+
+        /** Improve _plugs by toggling single pairs of letters until no
+         *  toggle improves its score, scoring by n-gram log-likelihood
+         *  iff NGRAMS.  Returns the final score. */
+        private double climb(boolean ngrams) {
+            double best = score(_plugs, ngrams);
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < _size; a++) {
+                    for (int b = a + 1; b < _size; b++) {
+                        System.arraycopy(_plugs, 0, _trial, 0, _size);
+                        toggle(_trial, a, b);
+                        double score = score(_trial, ngrams);
+                        if (score > best) {
+                            int[] swap = _plugs;
+                            _plugs = _trial;
+                            _trial = swap;
+                            best = score;
+                            improved = true;
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+
+        /** Return the score of the decryption of the ciphertext using
+         *  plugboard PLUGS: its n-gram log-likelihood iff NGRAMS, and
+         *  otherwise its index of coincidence. */
+        private double score(int[] plugs, boolean ngrams) {
+            int length = _cipher.length;
+            for (int i = 0; i < length; i++) {
+                _plain[i] = plugs[_schedule.forward(i, plugs[_cipher[i]])];
+            }
+            if (ngrams) {
+                return _scorer.logLikelihood(_plain, length);
+            }
+            return _scorer.indexOfCoincidence(_plain, length, _histogram);
+        }
+
+        /** Candidate to climb from. */
+        private final Result _origin;
+        /** Scramblers for the ciphertext's keypresses. */
+        private ScramblerSchedule _schedule;
+        /** Decryption being scored. */
+        private int[] _plain;
+        /** Scratch histogram for scoring. */
+        private int[] _histogram;
+        /** Best plugboard so far, and the one being tried. */
+        private int[] _plugs, _trial;
+    }
+
+    /** Plug A to B in PLUGS, first unplugging both, unless they are
+     *  already plugged together, in which case just unplug them. */
+    private static void toggle(int[] plugs, int a, int b) {
+        boolean together = plugs[a] == b;
+        plugs[plugs[a]] = plugs[a];
+        plugs[a] = a;
+        plugs[plugs[b]] = plugs[b];
+        plugs[b] = b;
+        if (!together) {
+            plugs[a] = b;
+            plugs[b] = a;
+        }
+    }
+
+    /** Return an empty plugboard. */
+    private int[] identity() {
+        int[] result = new int[_size];
+        for (int x = 0; x < _size; x++) {
+            result[x] = x;
+        }
+        return result;
+    }
+
+    /** Default number of positions kept for hill-climbing. */
+    static final int DEFAULT_CANDIDATES = 100;
+    /** Number of positions a task tests between updates of the shared
+     *  counters. */
+    private static final int PROGRESS_BATCH = 1024;
+    /** Nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Machine supplying the rotors and alphabet. */
+    private final Machine _machine;
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** Scores decryptions. */
+    private final TextScorer _scorer;
+    /** Pool running the tasks. */
+    private final ForkJoinPool _pool;
+    /** Ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+    /** Best positions found in the first phase. */
+    private final Leaderboard _positions;
+    /** Best results of the second phase. */
+    private volatile Leaderboard _results;
+    /** Number of positions tested, and to be tested. */
+    private final AtomicLong _tested = new AtomicLong(),
+        _totalPositions = new AtomicLong();
+    /** Number of climbs finished, and to be run. */
+    private final AtomicLong _climbs = new AtomicLong(),
+        _totalClimbs = new AtomicLong();
+    /** Time (from System.nanoTime) at which the attack started, or 0. */
+    private volatile long _start;
+}
@@ -0,0 +1,108 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the TextScorer and CiphertextAttack
+ *  classes.
+ *  @author Razi Mahmood
+ */
+public class CiphertextAttackTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Text from which the n-gram model's corpus is taken. */
+    private static final String TEXT =
+        "It was the best of times, it was the worst of times, it was the "
+        + "age of wisdom, it was the age of foolishness, it was the epoch "
+        + "of belief, it was the epoch of incredulity, it was the season "
+        + "of light, it was the season of darkness, it was the spring of "
+        + "hope, it was the winter of despair, we had everything before "
+        + "us, we had nothing before us, we were all going direct to "
+        + "heaven, we were all going direct the other way.  There were a "
+        + "king with a large jaw and a queen with a plain face, on the "
+        + "throne of England; there were a king with a large jaw and a "
+        + "queen with a fair face, on the throne of France.  In both "
+        + "countries it was clearer than crystal to the lords of the "
+        + "state preserves of loaves and fishes, that things in general "
+        + "were settled for ever.  It was the year of Our Lord one "
+        + "thousand seven hundred and seventy-five.  Spiritual "
+        + "revelations were conceded to England at that favoured period, "
+        + "as at this.  Mrs. Southcott had recently attained her five-and-"
+        + "twentieth blessed birthday, of whom a prophetic private in the "
+        + "Life Guards had heralded the sublime appearance by announcing "
+        + "that arrangements were made for the swallowing up of London "
+        + "and Westminster.";
+
+    /** Corpus on which the n-gram model is trained. */
+    private static final String CORPUS = TEXT.toUpperCase();
+
+    /** Plaintext of the test message. */
+    private static final String PLAIN =
+        "THEWEATHERFORECASTFORTOMORROWISCLEARSKIESWITHAGENTLEBREEZE"
+        + "FROMTHEWESTTHECONVOYWILLDEPARTATDAWNANDPROCEEDTOTHENORTHERN"
+        + "HARBOURWHEREFRESHSUPPLIESAREWAITINGALLCAPTAINSMUSTREPORTTHEIR"
+        + "POSITIONSEVERYFOURHOURSANDKEEPRADIOSILENCEOTHERWISEUNTILTHEY"
+        + "REACHTHEHARBOUR";
+
+    @Test
+    public void checkIndexOfCoincidence() {
+        TextScorer scorer = new TextScorer(UPPER);
+        int[] text = { 0, 0, 1, 1 };
+        assertEquals(2.0 / 6.0, scorer.indexOfCoincidence(text, 4,
+                                                          new int[26]),
+                     1e-12);
+        assertEquals(0.0, scorer.indexOfCoincidence(text, 1, new int[26]),
+                     0.0);
+        assertFalse(scorer.hasModel());
+    }
+
+    @Test
+    public void checkLogLikelihood() {
+        TextScorer scorer = new TextScorer(UPPER, 2, CORPUS);
+        assertTrue(scorer.hasModel());
+        int[] english = indices("THEREWASTHEKING");
+        int[] noise = indices("QXZJVKQXZJVKQXZ");
+        assertTrue(scorer.logLikelihood(english, english.length)
+                   > scorer.logLikelihood(noise, noise.length));
+    }
+
+    @Test
+    public void checkRecoversKey() {
+        Machine machine =
+            navalMachine(4, 3, "* B II I III QRS (AT) (BL) (MN) (QW) (EX)");
+        String cipher = machine.convert(PLAIN);
+        CiphertextAttack attack =
+            new CiphertextAttack(machine, cipher,
+                                 new TextScorer(UPPER, 2, CORPUS),
+                                 new ForkJoinPool(4), 20);
+        List<String[]> orders = new ArrayList<String[]>();
+        orders.add(new String[] { "B", "I", "II", "III" });
+        orders.add(new String[] { "B", "II", "I", "III" });
+        List<CiphertextAttack.Result> results = attack.attack(orders, 3);
+        assertEquals(3, results.size());
+        CiphertextAttack.Result best = results.get(0);
+        assertEquals("(AT) (BL) (EX) (MN) (QW)", best.plugboard());
+        Machine check = navalMachine(4, 3, best.toString());
+        assertEquals(PLAIN, check.convert(cipher));
+    }
+
+    /** Return the alphabet indices of the letters of TEXT. */
+    private static int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = UPPER.toInt(text.charAt(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,181 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Scanner;
+
+/** Reads the parts of a machine configuration in a single pass over its
+ *  text, a line at a time, keeping track of where each part starts so
+ *  that errors can be reported by line and column.  Words are separated
+ *  by whitespace, including line breaks.  Cycles, as in "(ABC) (DE)",
+ *  are read a character at a time straight into a permutation's
+ *  mapping, and may contain whitespace and span lines.
+ *  @author Razi Mahmood
+ */
+class ConfigTokenizer {
+
+    /** A tokenizer reading the lines of SOURCE. */
+    ConfigTokenizer(Scanner source) {
+        _source = source;
+        _line = "";
+    }
+
+    /** Return true iff only whitespace remains. */
+    boolean atEnd() {
+        return peek() < 0;
+    }
+
+    /** Return true iff the next part is a cycle. */
+    boolean atCycle() {
+        return peek() == '(';
+    }
+
+    /** Return the next word, described by WHAT in the error reported if
+     *  there is none. */
+    String next(String what) {
+        if (peek() < 0) {
+            throw syntaxError("expected %s", what);
+        }
+        int start = _column;
+        while (_column < _line.length()
+               && !Character.isWhitespace(_line.charAt(_column))) {
+            _column += 1;
+        }
+        return _line.substring(start, _column);
+    }
+
+    /** Return the next word, which must be a decimal integer described
+     *  by WHAT. */
+    int nextInt(String what) {
+        String word = next(what);
+        try {
+            return Integer.parseInt(word);
+        } catch (NumberFormatException excp) {
+            throw syntaxError("expected %s, not '%s'", what, word);
+        }
+    }
+
+    /** Read any cycles that come next, returning the mapping they give
+     *  of the indices of ALPHABET, in which characters in no cycle map
+     *  to themselves.  If HEX, each character of a cycle is written as
+     *  two hexadecimal digits giving its index. */
+    int[] nextCycles(Alphabet alphabet, boolean hex) {
+        int[] mapping = new int[alphabet.size()];
+        Arrays.fill(mapping, -1);
+        boolean[] seen = new boolean[mapping.length];
+        while (atCycle()) {
+            int cycleLine = _lineNumber;
+            int cycleColumn = _column;
+            _column += 1;
+            int first = -1;
+            int prev = -1;
+            while (true) {
+                int c = peek();
+                if (c < 0 || c == '(') {
+                    _markLine = cycleLine;
+                    _markColumn = cycleColumn;
+                    throw syntaxError("unterminated cycle");
+                } else if (c == ')') {
+                    _column += 1;
+                    break;
+                }
+                int index = hex ? nextHexIndex(alphabet)
+                    : nextCharIndex(alphabet);
+                if (seen[index]) {
+                    throw syntaxError("character repeated in cycles");
+                }
+                seen[index] = true;
+                if (prev < 0) {
+                    first = index;
+                } else {
+                    mapping[prev] = index;
+                }
+                prev = index;
+            }
+            if (prev < 0) {
+                _markLine = cycleLine;
+                _markColumn = cycleColumn;
+                throw syntaxError("empty cycle");
+            }
+            mapping[prev] = first;
+        }
+        for (int i = 0; i < mapping.length; i++) {
+            if (mapping[i] < 0) {
+                mapping[i] = i;
+            }
+        }
+        return mapping;
+    }
+
+    /** Return the index in ALPHABET of the next character, which must
+     *  be in it. */
+    private int nextCharIndex(Alphabet alphabet) {
+        char c = _line.charAt(_column);
+        int index = alphabet.index(c);
+        if (index < 0) {
+            throw syntaxError("'%c' is not in the alphabet", c);
+        }
+        _column += 1;
+        return index;
+    }
+
+    /** Return the index in ALPHABET given by the next two hexadecimal
+     *  digits. */
+    private int nextHexIndex(Alphabet alphabet) {
+        int high = Character.digit(_line.charAt(_column), HEX_RADIX);
+        int low = _column + 1 < _line.length()
+            ? Character.digit(_line.charAt(_column + 1), HEX_RADIX) : -1;
+        if (high < 0 || low < 0 || high * HEX_RADIX + low
+            >= alphabet.size()) {
+            throw syntaxError("expected two hexadecimal digits");
+        }
+        _column += 2;
+        return high * HEX_RADIX + low;
+    }
+
+    /** Return an exception reporting the error described by MSGFORMAT
+     *  and ARGS, as for String.format, at the start of the part of the
+     *  configuration most recently read or looked at. */
+    EnigmaException syntaxError(String msgFormat, Object... args) {
+        return new EnigmaException(
+            String.format("line %d, column %d: ", _markLine, _markColumn + 1)
+            + String.format(msgFormat, args));
+    }
+
+    /** Skip whitespace, reading lines as needed, and mark the position
+     *  reached.  Return the next character, or -1 if there is none. */
+    private int peek() {
+        while (true) {
+            while (_column < _line.length()) {
+                char c = _line.charAt(_column);
+                if (!Character.isWhitespace(c)) {
+                    _markLine = _lineNumber;
+                    _markColumn = _column;
+                    return c;
+                }
+                _column += 1;
+            }
+            if (!_source.hasNextLine()) {
+                _markLine = _lineNumber;
+                _markColumn = _column;
+                return -1;
+            }
+            _line = _source.nextLine();
+            _lineNumber += 1;
+            _column = 0;
+        }
+    }
+
+    /** Radix of the digits of a hexadecimal character. */
+    private static final int HEX_RADIX = 16;
+
+    /** Source of lines. */
+    private final Scanner _source;
+    /** The current line. */
+    private String _line;
+    /** Number of the current line, from 1. */
+    private int _lineNumber;
+    /** Position of the next character in _line. */
+    private int _column;
+    /** Line and column (from 0) of the last position marked by peek. */
+    private int _markLine, _markColumn;
+}
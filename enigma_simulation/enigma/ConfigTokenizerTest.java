@@ -0,0 +1,141 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the ConfigTokenizer class and the
+ *  reading of configurations by Main.
+ *  @author Razi Mahmood
+ */
+public class ConfigTokenizerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return a tokenizer reading TEXT. */
+    private static ConfigTokenizer tokenizer(String text) {
+        return new ConfigTokenizer(new Scanner(text));
+    }
+
+    @Test
+    public void checkWordsAndCycles() {
+        Alphabet alphabet = new Alphabet("ABCDE");
+        ConfigTokenizer tokens =
+            tokenizer("  ABCDE\n\t5 3\nI MA (AB\n  C) (E)\n\n(D)\nII N");
+        assertEquals("ABCDE", tokens.next("alphabet"));
+        assertEquals(5, tokens.nextInt("number"));
+        assertEquals(3, tokens.nextInt("number"));
+        assertFalse(tokens.atCycle());
+        assertEquals("I", tokens.next("name"));
+        assertEquals("MA", tokens.next("type"));
+        assertTrue(tokens.atCycle());
+        assertArrayEquals(new int[] { 1, 2, 0, 3, 4 },
+                          tokens.nextCycles(alphabet, false));
+        assertEquals("II", tokens.next("name"));
+        assertEquals("N", tokens.next("type"));
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 4 },
+                          tokens.nextCycles(alphabet, false));
+        assertTrue(tokens.atEnd());
+        assertArrayEquals(new int[] { 0, 2, 3, 1 },
+                          tokenizer("(0102 03)")
+                          .nextCycles(new Alphabet("WXYZ"), true));
+    }
+
+    /** Check that reading the configuration CONFIG fails with a message
+     *  starting with PREFIX. */
+    private static void checkError(String config, String prefix) {
+        try {
+            new Main(new Scanner(config)).readConfig();
+            fail(config);
+        } catch (EnigmaException excp) {
+            assertTrue(config + ": " + excp.getMessage(),
+                       excp.getMessage().startsWith(prefix));
+        }
+    }
+
+    @Test
+    public void checkErrorPositions() {
+        checkError("ABC\n3 x\n", "line 2, column 3: expected number");
+        checkError("ABC\n3\n", "line 2, column 2: expected number");
+        checkError("ABC\n3 3\n", "line 2, column 3: number of pawls");
+        checkError("ABC\n3 1\nI Q (AB)\n", "line 3, column 3: Invalid");
+        checkError("ABC\n3 1\nI MX (AB)\n", "line 3, column 3: notch");
+        checkError("ABC\n3 1\nI M (AB)\n  (CA)\n",
+                   "line 4, column 5: character repeated");
+        checkError("ABC\n3 1\nI M (AB)\n  (CD)\n",
+                   "line 4, column 5: 'D' is not");
+        checkError("ABC\n3 1\nI M (AB)\nII M  (C\n",
+                   "line 4, column 7: unterminated");
+        checkError("ABC\n3 1\nI M (AB)\nII M (C (B)\n",
+                   "line 4, column 6: unterminated");
+        checkError("ABC\n3 1\nI M () \n", "line 3, column 5: empty");
+        checkError("ABC\n3 1\n(AB)\n", "line 3, column 1: cycle");
+        checkError("ABC\n3 1\nI\n", "line 3, column 2: expected rotor type");
+        checkError("ABA\n3 1\n", "line 1, column 1: duplicates");
+    }
+
+    @Test
+    public void checkMachine() {
+        Main main = new Main(new Scanner(
+            "ABCD 3 1 B R (AC) (BD) I N (ABC)\n"
+            + "II MCD (AD)\n(BC)\n"));
+        Machine machine = main.readConfig();
+        assertEquals(3, machine.numRotors());
+        assertEquals(1, machine.numPawls());
+        Rotor rotor = machine.extractRotor("II");
+        assertTrue(rotor instanceof MovingRotor);
+        assertEquals(3, rotor.permutation().permute(0));
+        assertEquals(2, rotor.permutation().permute(1));
+        assertTrue(machine.extractRotor("I") instanceof FixedRotor);
+        assertEquals(1, machine.extractRotor("I").permutation().permute(0));
+        assertTrue(machine.extractRotor("B") instanceof Reflector);
+    }
+
+    @Test
+    public void checkLargeConfig() {
+        int size = 2000;
+        int count = 2000;
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i++) {
+            chars[i] = (char) ('\u0100' + i);
+        }
+        Random random = new Random(1);
+        List<Character> order = new ArrayList<Character>();
+        for (char c : chars) {
+            order.add(c);
+        }
+        StringBuilder config = new StringBuilder(new String(chars));
+        config.append("\n5 3\nR R");
+        for (int i = 0; i < size; i += 2) {
+            config.append(" (").append(chars[i]).append(chars[i + 1])
+                .append(")");
+        }
+        for (int k = 0; k < count; k++) {
+            Collections.shuffle(order, random);
+            config.append("\nR").append(k).append(" M").append(chars[0])
+                .append(" (");
+            for (char c : order) {
+                config.append(c);
+            }
+            config.append(")");
+        }
+        Machine machine =
+            new Main(new Scanner(config.toString())).readConfig();
+        Permutation last = machine.extractRotor("R" + (count - 1))
+            .permutation();
+        for (int i = 0; i < size; i++) {
+            int from = order.get(i) - '\u0100';
+            int to = order.get((i + 1) % size) - '\u0100';
+            assertEquals(to, last.permute(from));
+        }
+    }
+}
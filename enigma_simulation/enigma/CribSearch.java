@@ -0,0 +1,422 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers machine settings from a ciphertext and a crib (a piece of
+ *  plaintext known to lie at some offset in the message), in the manner
+ *  of the Turing-Welchman Bombe.  Every rotor order that can be built
+ *  from a machine's available rotors and every starting position of
+ *  those rotors is tried on a fork/join pool.  Nothing is decrypted:
+ *  each crib letter and the ciphertext letter under it form an edge of
+ *  a "menu", and at each candidate position a hypothesis about the
+ *  plugboard partner of one menu letter is propagated through the
+ *  scramblers at the crib's keypresses.  A hypothesis survives (is a
+ *  "stop") only if it never requires a letter to have two partners;
+ *  positions at which every hypothesis contradicts itself are
+ *  eliminated.  Stops are passed to a caller-supplied consumer as they
+ *  are found, together with the plugboard pairs they imply.
+ *  @author Razi Mahmood
+ */
+class CribSearch {
+
+    /** A search for the settings of the machine whose rotors and
+     *  alphabet are those of MACHINE that encrypted CIPHERTEXT, given
+     *  that CRIB is part of the plaintext.  Characters of either that
+     *  are not in the alphabet are ignored.  Runs in the common fork/join
+     *  pool.  MACHINE must not be used while a search is running. */
+    CribSearch(Machine machine, String ciphertext, String crib) {
+        this(machine, ciphertext, crib, ForkJoinPool.commonPool());
+    }
+
+    /** As for CribSearch(MACHINE, CIPHERTEXT, CRIB), but running in
+     *  POOL. */
+    CribSearch(Machine machine, String ciphertext, String crib,
+               ForkJoinPool pool) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _pool = pool;
+        _cipher = indices(ciphertext);
+        _crib = indices(crib);
+        if (_crib.length == 0) {
+            throw error("empty crib");
+        }
+        if (_crib.length > _cipher.length) {
+            throw error("crib is longer than the ciphertext");
+        }
+    }
+
+    /** Return the offsets in the ciphertext at which the crib could lie:
+     *  those at which no crib letter falls on the same ciphertext
+     *  letter, which the reflector makes impossible. */
+    int[] possibleOffsets() {
+        int[] result = new int[_cipher.length - _crib.length + 1];
+        int count = 0;
+        for (int offset = 0; offset < result.length; offset++) {
+            boolean possible = true;
+            for (int i = 0; possible && i < _crib.length; i++) {
+                possible = _crib[i] != _cipher[offset + i];
+            }
+            if (possible) {
+                result[count++] = offset;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** Search every rotor order with the crib at OFFSET in the
+     *  ciphertext, passing each stop to RESULTS. */
+    void search(int offset, Consumer<Candidate> results) {
+        search(offset, _machine.rotorOrders(), results);
+    }
+
+    /** Search the rotor orders ORDERS with the crib at OFFSET in the
+     *  ciphertext, passing each stop to RESULTS as it is found.  RESULTS
+     *  is called from several threads at once. */
+    void search(int offset, List<String[]> orders,
+                Consumer<Candidate> results) {
+        if (offset < 0 || offset + _crib.length > _cipher.length) {
+            throw error("crib offset %d out of range", offset);
+        }
+        Menu menu = new Menu(offset);
+        ArrayList<SearchTask> tasks = new ArrayList<SearchTask>();
+        for (String[] order : orders) {
+            if (order.length != _machine.numRotors()) {
+                throw error("rotor order has wrong number of rotors");
+            }
+            for (int lead = 0; lead < _size; lead++) {
+                tasks.add(new SearchTask(menu, order, lead, results));
+            }
+        }
+        long positions = 1;
+        for (int i = 2; i < _machine.numRotors(); i++) {
+            positions *= _size;
+        }
+        _total.addAndGet(positions * tasks.size());
+        if (_start == 0) {
+            _start = System.nanoTime();
+        }
+        _pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /** Return the number of candidate positions tested so far. */
+    long tested() {
+        return _tested.get();
+    }
+
+    /** Return the number of stops found so far. */
+    long stops() {
+        return _stops.get();
+    }
+
+    /** Return a line reporting the progress and throughput of my
+     *  searches so far. */
+    String progress() {
+        long tested = _tested.get();
+        long total = _total.get();
+        double seconds = _start == 0 ? 0
+            : (System.nanoTime() - _start) / NANOS_PER_SECOND;
+        return String.format("tested=%d/%d (%.1f%%) stops=%d "
+                             + "rate=%.0f/s elapsed=%.1fs",
+                             tested, total,
+                             total == 0 ? 0.0 : PERCENT * tested / total,
+                             _stops.get(),
+                             seconds == 0 ? 0.0 : tested / seconds,
+                             seconds);
+    }
+
+    /** Return the alphabet indices of the characters of TEXT that are in
+     *  my alphabet. */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int index = _alphabet.index(text.charAt(i));
+            if (index >= 0) {
+                result[count++] = index;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** A settings line describing a stop. */
+    static class Candidate {
+
+        /** A stop at crib offset OFFSET with rotors named ROTORS, at
+         *  SETTING when the first ciphertext character is typed, and
+         *  implying the plugboard cycles PLUGBOARD. */
+        Candidate(int offset, String[] rotors, String setting,
+                  String plugboard) {
+            _offset = offset;
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the crib offset at which I was found. */
+        int offset() {
+            return _offset;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor setting. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs I imply, as cycles. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return me as a settings line for an input file. */
+        @Override
+        public String toString() {
+            StringBuilder line = new StringBuilder("*");
+            for (String name : _rotors) {
+                line.append(' ').append(name);
+            }
+            line.append(' ').append(_setting);
+            if (!_plugboard.isEmpty()) {
+                line.append(' ').append(_plugboard);
+            }
+            return line.toString();
+        }
+
+        /** Offset of the crib. */
+        private final int _offset;
+        /** Rotor names. */
+        private final String[] _rotors;
+        /** Rotor setting. */
+        private final String _setting;
+        /** Implied plugboard pairs. */
+        private final String _plugboard;
+    }
+
+    /** The letter pairs of the crib at one offset, as a graph. */
+    private class Menu {
+
+        /** The menu for the crib at OFFSET in the ciphertext. */
+        Menu(int offset) {
+            _offset = offset;
+            int length = _crib.length;
+            _plain = _crib;
+            _coded = Arrays.copyOfRange(_cipher, offset, offset + length);
+            int[] degree = new int[_size];
+            for (int i = 0; i < length; i++) {
+                degree[_plain[i]]++;
+                degree[_coded[i]]++;
+            }
+            _edges = new int[_size][];
+            int best = 0;
+            for (int x = 0; x < _size; x++) {
+                _edges[x] = new int[degree[x]];
+                if (degree[x] > degree[best]) {
+                    best = x;
+                }
+            }
+            _test = best;
+            Arrays.fill(degree, 0);
+            for (int i = 0; i < length; i++) {
+                _edges[_plain[i]][degree[_plain[i]]++] = i;
+                _edges[_coded[i]][degree[_coded[i]]++] = i;
+            }
+        }
+
+        /** Offset of the crib in the ciphertext. */
+        private final int _offset;
+        /** Crib letters. */
+        private final int[] _plain;
+        /** Ciphertext letters under the crib. */
+        private final int[] _coded;
+        /** The crib positions at which each letter occurs. */
+        private final int[][] _edges;
+        /** The letter whose plugboard partner is hypothesized. */
+        private final int _test;
+    }
+
+    /** Tests every position of one rotor order that has a given
+     *  setting of the leftmost non-reflector rotor. */
+    private class SearchTask extends RecursiveAction {
+
+        /** A task testing MENU with rotors ORDER and the leftmost
+         *  non-reflector rotor at LEAD, reporting stops to RESULTS. */
+        SearchTask(Menu menu, String[] order, int lead,
+                   Consumer<Candidate> results) {
+            _menu = menu;
+            _order = order;
+            _lead = lead;
+            _results = results;
+        }
+
+        @Override
+        protected void compute() {
+            int length = _crib.length;
+            _schedule = new ScramblerSchedule(_machine, _order, length);
+            _partner = new int[_size];
+            _queue = new int[_size];
+            Arrays.fill(_partner, -1);
+
+            int[] settings = new int[_order.length];
+            settings[1] = _lead;
+            long tested = 0;
+            do {
+                _schedule.load(settings, _menu._offset);
+                for (int h = 0; h < _size; h++) {
+                    if (consistent(h)) {
+                        _stops.incrementAndGet();
+                        _results.accept(candidate(settings));
+                    }
+                }
+                tested++;
+                if (tested == PROGRESS_BATCH) {
+                    _tested.addAndGet(tested);
+                    tested = 0;
+                }
+            } while (ScramblerSchedule.advance(settings, 2, _size));
+            _tested.addAndGet(tested);
+        }
+
+        /** Return true iff hypothesizing that the menu's test letter is
+         *  plugged to H leads to no contradiction at the current
+         *  position.  Afterwards, _partner holds the implied pairs if
+         *  so; it is cleared otherwise. */
+        private boolean consistent(int h) {
+            clear();
+            if (!assign(_menu._test, h)) {
+                return false;
+            }
+            for (int next = 0; next < _queued; next++) {
+                int x = _queue[next];
+                int px = _partner[x];
+                for (int i : _menu._edges[x]) {
+                    boolean ok;
+                    if (_menu._plain[i] == x) {
+                        ok = assign(_menu._coded[i],
+                                    _schedule.forward(i, px));
+                    } else {
+                        ok = assign(_menu._plain[i],
+                                    _schedule.backward(i, px));
+                    }
+                    if (!ok) {
+                        clear();
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record that A and B are plugboard partners, returning false if
+         *  either already has a different partner. */
+        private boolean assign(int a, int b) {
+            if (_partner[a] == b) {
+                return true;
+            } else if (_partner[a] >= 0 || _partner[b] >= 0) {
+                return false;
+            }
+            _partner[a] = b;
+            _partner[b] = a;
+            _queue[_queued++] = a;
+            if (b != a) {
+                _queue[_queued++] = b;
+            }
+            return true;
+        }
+
+        /** Forget all partners recorded since the last call. */
+        private void clear() {
+            for (int i = 0; i < _queued; i++) {
+                _partner[_queue[i]] = -1;
+            }
+            _queued = 0;
+        }
+
+        /** Return the stop at SETTINGS with the partners in _partner. */
+        private Candidate candidate(int[] settings) {
+            char[] setting = new char[settings.length - 1];
+            for (int i = 1; i < settings.length; i++) {
+                setting[i - 1] = _alphabet.toChar(settings[i]);
+            }
+            int[] letters = Arrays.copyOf(_queue, _queued);
+            Arrays.sort(letters);
+            StringBuilder plugs = new StringBuilder();
+            for (int x : letters) {
+                int y = _partner[x];
+                if (x < y) {
+                    if (plugs.length() > 0) {
+                        plugs.append(' ');
+                    }
+                    plugs.append('(').append(_alphabet.toChar(x))
+                        .append(_alphabet.toChar(y)).append(')');
+                }
+            }
+            return new Candidate(_menu._offset, _order.clone(),
+                                 new String(setting), plugs.toString());
+        }
+
+        /** Menu being tested. */
+        private final Menu _menu;
+        /** Names of the rotors tested. */
+        private final String[] _order;
+        /** Setting of the leftmost non-reflector rotor. */
+        private final int _lead;
+        /** Destination of stops. */
+        private final Consumer<Candidate> _results;
+        /** Scramblers at the crib's keypresses. */
+        private ScramblerSchedule _schedule;
+        /** Hypothesized plugboard partner of each letter, or -1. */
+        private int[] _partner;
+        /** Letters given partners, in the order to be propagated. */
+        private int[] _queue;
+        /** Number of letters in _queue. */
+        private int _queued;
+    }
+
+    /** Number of positions a task tests between updates of the shared
+     *  counters. */
+    private static final int PROGRESS_BATCH = 1024;
+    /** Nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+    /** Scale of a percentage. */
+    private static final double PERCENT = 100.0;
+
+    /** Machine supplying the rotors and alphabet. */
+    private final Machine _machine;
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** Pool running the search tasks. */
+    private final ForkJoinPool _pool;
+    /** Ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+    /** Crib, as alphabet indices. */
+    private final int[] _crib;
+    /** Number of positions tested. */
+    private final AtomicLong _tested = new AtomicLong();
+    /** Number of positions to be tested by the searches started. */
+    private final AtomicLong _total = new AtomicLong();
+    /** Number of stops found. */
+    private final AtomicLong _stops = new AtomicLong();
+    /** Time (from System.nanoTime) at which the first search started,
+     *  or 0. */
+    private volatile long _start;
+}
@@ -0,0 +1,85 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribSearch class.
+ *  @author Razi Mahmood
+ */
+public class CribSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Settings of the machine that encrypts the test message. */
+    private static final String KEY = "* B II I III QRS (AT) (BL) (MN) (QW)";
+
+    /** Plaintext of the test message. */
+    private static final String PLAIN =
+        "KEINEBESONDERENEREIGNISSEWETTERVORHERSAGEBISKAYAHEITER";
+
+    /** The crib. */
+    private static final String CRIB = "WETTERVORHERSAGEBISKAYA";
+    /** Offset of CRIB in PLAIN. */
+    private static final int OFFSET = PLAIN.indexOf(CRIB);
+
+    @Test
+    public void checkRotorOrders() {
+        Machine machine = navalMachine(KeystreamTableTest.SETTINGS);
+        List<String[]> orders = machine.rotorOrders();
+        assertEquals(2 * 2 * 8 * 7 * 6, orders.size());
+        for (String[] order : orders) {
+            machine.insertRotors(order);
+        }
+    }
+
+    @Test
+    public void checkPossibleOffsets() {
+        Machine machine = navalMachine(KeystreamTableTest.SETTINGS);
+        CribSearch search = new CribSearch(machine, "ABCABD", "AB");
+        assertArrayEquals(new int[] { 1, 2, 4 }, search.possibleOffsets());
+    }
+
+    @Test
+    public void checkFindsKey() {
+        Machine machine = navalMachine(4, 3, KEY);
+        String cipher = machine.convert(PLAIN);
+        CribSearch search = new CribSearch(machine, cipher, CRIB,
+                                           new ForkJoinPool(4));
+        List<String[]> orders = new ArrayList<String[]>();
+        orders.add(new String[] { "B", "I", "II", "III" });
+        orders.add(new String[] { "B", "II", "I", "III" });
+        orders.add(new String[] { "C", "II", "I", "III" });
+        ConcurrentLinkedQueue<CribSearch.Candidate> stops =
+            new ConcurrentLinkedQueue<CribSearch.Candidate>();
+        search.search(OFFSET, orders, stops::add);
+
+        assertEquals(3 * 26 * 26 * 26, search.tested());
+        assertEquals(stops.size(), search.stops());
+        assertTrue("too many stops: " + stops.size(), stops.size() < 100);
+        boolean found = false;
+        for (CribSearch.Candidate stop : stops) {
+            if (stop.setting().equals("QRS")
+                && Arrays.equals(stop.rotors(),
+                                 new String[] { "B", "II", "I", "III" })) {
+                found = true;
+                for (String pair : stop.plugboard().split(" ")) {
+                    assertTrue(pair, Arrays.asList("(AT)", "(BL)", "(MN)",
+                                                   "(QW)").contains(pair));
+                }
+            }
+        }
+        assertTrue("key not found", found);
+    }
+}
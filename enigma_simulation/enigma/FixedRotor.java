@@ -12,4 +12,11 @@ class FixedRotor extends Rotor {
     FixedRotor(String name, Permutation perm) {
         super(name, perm);
     }
+
+    @Override
+    Rotor copy() {
+        FixedRotor result = new FixedRotor(name(), permutation());
+        result.set(setting());
+        return result;
+    }
 }
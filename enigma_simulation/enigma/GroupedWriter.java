@@ -0,0 +1,353 @@
+package enigma;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import static enigma.EnigmaException.*;
+
+/** Writes converted message lines in groups of Main.GROUP_SIZE
+ *  characters, as Main prints them, encoding them directly into large
+ *  reusable byte buffers.  An asynchronous writer hands each full buffer
+ *  to a writer thread, which writes it to the channel while the caller
+ *  fills another, so that conversion does not wait for the disk; the
+ *  caller waits only when every buffer is full (a bounded amount of
+ *  output is ever pending).  A synchronous writer writes each full
+ *  buffer itself, and suits output that goes to memory.  Errors met by
+ *  the writer thread are reported by the next call.
+ *  @author Razi Mahmood
+ */
+class GroupedWriter {
+
+    /** An asynchronous writer to OUT, encoding characters with CHARSET,
+     *  with DEFAULT_BUFFERS buffers of DEFAULT_BUFFER_SIZE bytes. */
+    GroupedWriter(OutputStream out, Charset charset) {
+        this(Channels.newChannel(out), out, charset, DEFAULT_BUFFER_SIZE,
+             DEFAULT_BUFFERS);
+    }
+
+    /** A writer to CHANNEL, encoding characters with CHARSET, with
+     *  BUFFERS buffers of BUFFERSIZE bytes.  The writer is synchronous
+     *  if BUFFERS is 1. */
+    GroupedWriter(WritableByteChannel channel, Charset charset,
+                  int bufferSize, int buffers) {
+        this(channel, null, charset, bufferSize, buffers);
+    }
+
+    /** A writer to CHANNEL, flushing STREAM (if not null) on flush(),
+     *  otherwise as for GroupedWriter(WritableByteChannel, Charset, int,
+     *  int). */
+    private GroupedWriter(WritableByteChannel channel, Flushable stream,
+                          Charset charset, int bufferSize, int buffers) {
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw error("output buffer must hold at least %d bytes",
+                        MIN_BUFFER_SIZE);
+        }
+        if (buffers < 1) {
+            throw error("need at least one output buffer");
+        }
+        _channel = channel;
+        _stream = stream;
+        _charset = charset;
+        _separator = System.lineSeparator().getBytes(charset);
+        _current = ByteBuffer.allocate(bufferSize);
+        _bytes = _current.array();
+        if (buffers == 1) {
+            _free = _full = null;
+            _flushed = null;
+            _thread = null;
+            return;
+        }
+        _free = new ArrayBlockingQueue<ByteBuffer>(buffers);
+        _full = new ArrayBlockingQueue<ByteBuffer>(buffers + 1);
+        for (int i = 1; i < buffers; i++) {
+            _free.add(ByteBuffer.allocate(bufferSize));
+        }
+        _flushed = new Semaphore(0);
+        _thread = new Thread(this::drain, "enigma-writer");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /** Write MSG[0 .. LENGTH-1] as a line, in groups of Main.GROUP_SIZE
+     *  characters separated by single blanks, skipping the blanks in
+     *  MSG. */
+    void writeLine(char[] msg, int length) {
+        write(msg, 0, length);
+        endLine();
+    }
+
+    /** Write MSG[START .. END-1] as the continuation of the current
+     *  line, grouped as for writeLine, so that a line of any length may
+     *  be written in pieces: groups continue across the pieces. */
+    void write(char[] msg, int start, int end) {
+        checkFailure();
+        int inGroup = _inGroup;
+        for (int i = start; i < end; i++) {
+            char c = msg[i];
+            if (c != ' ') {
+                if (inGroup == Main.GROUP_SIZE) {
+                    put(' ');
+                    inGroup = 0;
+                }
+                put(c);
+                inGroup++;
+            }
+        }
+        _inGroup = inGroup;
+    }
+
+    /** End the current line. */
+    void endLine() {
+        putHighSurrogate();
+        put(_separator);
+        _inGroup = 0;
+    }
+
+    /** Write everything written so far, and wait until it has been. */
+    void flush() {
+        checkFailure();
+        if (_thread == null) {
+            submit();
+            flushStream();
+        } else {
+            if (_length > 0) {
+                submit();
+            }
+            try {
+                _full.put(FLUSH);
+                _flushed.acquire();
+            } catch (InterruptedException excp) {
+                throw interrupted();
+            }
+        }
+        checkFailure();
+    }
+
+    /** Flush, and stop my writer thread, if any.  The channel is left
+     *  open.  Does nothing if I am already closed. */
+    void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            putHighSurrogate();
+            flush();
+        } finally {
+            if (_thread != null) {
+                try {
+                    _full.put(END);
+                    _thread.join();
+                } catch (InterruptedException excp) {
+                    throw interrupted();
+                }
+            }
+        }
+    }
+
+    /** Append C, encoded, to the current buffer.  A high surrogate is
+     *  held back until the next character, so that a surrogate pair is
+     *  encoded as the single character it stands for, even when the
+     *  pair is split between calls to write. */
+    private void put(char c) {
+        if (_highSurrogate != 0) {
+            if (Character.isLowSurrogate(c)) {
+                putEncoded(Character.toCodePoint(_highSurrogate, c));
+                _highSurrogate = 0;
+                return;
+            }
+            putHighSurrogate();
+        }
+        if (c < ASCII_LIMIT) {
+            if (_length == _bytes.length) {
+                submit();
+            }
+            _bytes[_length++] = (byte) c;
+        } else if (Character.isHighSurrogate(c)) {
+            _highSurrogate = c;
+        } else {
+            putEncoded(c);
+        }
+    }
+
+    /** Append the high surrogate held back by put(char), if any, on its
+     *  own. */
+    private void putHighSurrogate() {
+        if (_highSurrogate != 0) {
+            char high = _highSurrogate;
+            _highSurrogate = 0;
+            putEncoded(high);
+        }
+    }
+
+    /** Append the encoding of the character CODEPOINT. */
+    private void putEncoded(int codePoint) {
+        byte[] bytes = _encodings.get(codePoint);
+        if (bytes == null) {
+            bytes = new String(Character.toChars(codePoint))
+                .getBytes(_charset);
+            _encodings.put(codePoint, bytes);
+        }
+        put(bytes);
+    }
+
+    /** Append BYTES to the current buffer. */
+    private void put(byte[] bytes) {
+        for (byte b : bytes) {
+            if (_length == _bytes.length) {
+                submit();
+            }
+            _bytes[_length++] = b;
+        }
+    }
+
+    /** Write out the current buffer, or hand it to my writer thread and
+     *  take a free buffer in its place, waiting for one if need be. */
+    private void submit() {
+        _current.position(_length);
+        _length = 0;
+        if (_thread == null) {
+            write(_current);
+            return;
+        }
+        checkFailure();
+        try {
+            _full.put(_current);
+            _current = _free.take();
+        } catch (InterruptedException excp) {
+            throw interrupted();
+        }
+        _bytes = _current.array();
+    }
+
+    /** Write the contents of BUFFER to the channel, and clear it.  Once
+     *  a write has failed, the contents of later buffers are dropped. */
+    private void write(ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining() && _failure == null) {
+                _channel.write(buffer);
+            }
+        } catch (IOException excp) {
+            _failure = excp;
+        }
+        checkStream();
+        buffer.clear();
+    }
+
+    /** Flush the stream underlying the channel, if any. */
+    private void flushStream() {
+        if (_stream != null && _failure == null) {
+            try {
+                _stream.flush();
+            } catch (IOException excp) {
+                _failure = excp;
+            }
+            checkStream();
+        }
+    }
+
+    /** Record a failure if the stream underlying the channel is a
+     *  PrintStream that has met an error.  A PrintStream swallows its
+     *  IOExceptions (so the channel over it never throws), and reports
+     *  them only through checkError, which also flushes it. */
+    private void checkStream() {
+        if (_stream instanceof PrintStream && _failure == null
+            && ((PrintStream) _stream).checkError()) {
+            _failure = new IOException("output stream reported an error");
+        }
+    }
+
+    /** The body of my writer thread: write each buffer handed over,
+     *  then return it to the free buffers, until END arrives. */
+    private void drain() {
+        try {
+            while (true) {
+                ByteBuffer buffer = _full.take();
+                if (buffer == END) {
+                    return;
+                } else if (buffer == FLUSH) {
+                    flushStream();
+                    _flushed.release();
+                } else {
+                    write(buffer);
+                    _free.put(buffer);
+                }
+            }
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** Throw an exception if a write has failed. */
+    private void checkFailure() {
+        IOException failure = _failure;
+        if (failure != null) {
+            throw error("error writing output: %s", failure.getMessage());
+        }
+    }
+
+    /** Return the exception reporting an interrupted wait, restoring
+     *  the interrupt status of the current thread. */
+    private static EnigmaException interrupted() {
+        Thread.currentThread().interrupt();
+        return error("interrupted while writing output");
+    }
+
+    /** Default size of each buffer. */
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    /** Default number of buffers. */
+    static final int DEFAULT_BUFFERS = 4;
+    /** Smallest size of a buffer: enough for any one encoded
+     *  character. */
+    static final int MIN_BUFFER_SIZE = 8;
+    /** Characters below this are written as single bytes. */
+    private static final char ASCII_LIMIT = 0x80;
+    /** Handed to the writer thread to request a flush. */
+    private static final ByteBuffer FLUSH = ByteBuffer.allocate(0);
+    /** Handed to the writer thread to stop it. */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /** Where output goes. */
+    private final WritableByteChannel _channel;
+    /** Stream underlying _channel, flushed with it, or null. */
+    private final Flushable _stream;
+    /** Encoding of the characters written. */
+    private final Charset _charset;
+    /** The encoded line separator. */
+    private final byte[] _separator;
+    /** Encodings of the non-ASCII characters written so far, by code
+     *  point. */
+    private final HashMap<Integer, byte[]> _encodings =
+        new HashMap<Integer, byte[]>();
+    /** Buffer being filled by the caller. */
+    private ByteBuffer _current;
+    /** The backing array of _current. */
+    private byte[] _bytes;
+    /** The number of bytes of _bytes filled. */
+    private int _length;
+    /** Number of characters in the last group of the current line. */
+    private int _inGroup;
+    /** A high surrogate written but not yet encoded, or 0. */
+    private char _highSurrogate;
+    /** Empty buffers, and buffers waiting to be written, or null if I am
+     *  synchronous. */
+    private final ArrayBlockingQueue<ByteBuffer> _free, _full;
+    /** Released by the writer thread after each flush, or null. */
+    private final Semaphore _flushed;
+    /** Writes buffers handed to it, or null if I am synchronous. */
+    private final Thread _thread;
+    /** The first error met in writing, or null. */
+    private volatile IOException _failure;
+    /** True once close() has been called. */
+    private boolean _closed;
+}
@@ -0,0 +1,192 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/** The suite of all JUnit tests for the GroupedWriter class.
+ *  @author Razi Mahmood
+ */
+public class GroupedWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Line separator. */
+    static final String NL = System.lineSeparator();
+
+    /** Write each of LINES with WRITER, then close it. */
+    private static void writeAll(GroupedWriter writer, String... lines) {
+        for (String line : lines) {
+            writer.writeLine(line.toCharArray(), line.length());
+        }
+        writer.close();
+    }
+
+    @Test
+    public void checkGrouping() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeAll(new GroupedWriter(out, StandardCharsets.UTF_8),
+                 "ABCDEFGHIJKL", "", "AB CD EF", "ABCDE",
+                 "\u00c4BC\u00d6DE\u00dc");
+        assertEquals("ABCDE FGHIJ KL" + NL + NL + "ABCDE F" + NL
+                     + "ABCDE" + NL + "\u00c4BC\u00d6D E\u00dc" + NL,
+                     new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void checkSupplementary() {
+        String smile = "\ud83d\ude00";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GroupedWriter writer = new GroupedWriter(out, StandardCharsets.UTF_8);
+        char[] line = ("AB" + smile + "C" + smile).toCharArray();
+        writer.write(line, 0, 3);
+        writer.write(line, 3, line.length);
+        writer.endLine();
+        writer.writeLine(smile.toCharArray(), 1);
+        writeAll(writer, "X" + smile);
+        assertEquals("AB" + smile + "C " + smile + NL + "?" + NL
+                     + "X" + smile + NL,
+                     new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void checkSmallBuffers() {
+        Random random = new Random(7);
+        StringBuilder expected = new StringBuilder();
+        String[] lines = new String[200];
+        for (int i = 0; i < lines.length; i++) {
+            char[] line = new char[random.nextInt(40)];
+            for (int j = 0; j < line.length; j++) {
+                line[j] = (char) ('A' + random.nextInt(26));
+            }
+            lines[i] = new String(line);
+            for (int j = 0; j < line.length; j++) {
+                if (j > 0 && j % Main.GROUP_SIZE == 0) {
+                    expected.append(' ');
+                }
+                expected.append(line[j]);
+            }
+            expected.append(NL);
+        }
+        for (int buffers = 1; buffers <= 3; buffers++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeAll(new GroupedWriter(Channels.newChannel(out),
+                                       StandardCharsets.US_ASCII,
+                                       GroupedWriter.MIN_BUFFER_SIZE,
+                                       buffers),
+                     lines);
+            assertEquals(expected.toString(),
+                         new String(out.toByteArray(),
+                                    StandardCharsets.US_ASCII));
+        }
+    }
+
+    /** A channel that accepts nothing until released, counting the
+     *  bytes written. */
+    static class GatedChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            try {
+                _gate.await();
+            } catch (InterruptedException excp) {
+                throw new IOException("interrupted");
+            }
+            int n = src.remaining();
+            src.position(src.limit());
+            _written += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Released to let writes proceed. */
+        final CountDownLatch _gate = new CountDownLatch(1);
+        /** Number of bytes written. */
+        volatile long _written;
+    }
+
+    @Test
+    public void checkBackPressure() throws InterruptedException {
+        GatedChannel channel = new GatedChannel();
+        GroupedWriter writer =
+            new GroupedWriter(channel, StandardCharsets.US_ASCII, 16, 2);
+        char[] line = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                writer.writeLine(line, line.length);
+            }
+            writer.flush();
+            done.countDown();
+        });
+        producer.start();
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, channel._written);
+        channel._gate.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(100 * (31 + NL.length()), channel._written);
+        writer.close();
+        producer.join();
+    }
+
+    @Test
+    public void checkFailure() {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        GroupedWriter writer =
+            new GroupedWriter(broken, StandardCharsets.US_ASCII);
+        writer.writeLine("ABC".toCharArray(), 3);
+        try {
+            writer.close();
+            fail("no error reported");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("disk full"));
+        }
+    }
+
+    @Test
+    public void checkPrintStreamFailure() {
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        GroupedWriter writer =
+            new GroupedWriter(new PrintStream(broken),
+                              StandardCharsets.US_ASCII);
+        writer.writeLine("ABC".toCharArray(), 3);
+        try {
+            writer.close();
+            fail("no error reported");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().startsWith("error writing output"));
+        }
+    }
+}
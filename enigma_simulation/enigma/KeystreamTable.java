@@ -0,0 +1,172 @@
+package enigma;
+
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** The complete stepping schedule of a machine from one setting,
+ *  tabulated once so that the substitution applied at any keypress of a
+ *  message can be looked up directly.  The rotor positions of a machine
+ *  follow a deterministic sequence that, after at most a few transient
+ *  states (e.g., a pending double step), repeats with a fixed period, so
+ *  only prefix() + period() substitution tables are stored.
+ *  @author Razi Mahmood
+ */
+class KeystreamTable {
+
+    /** A table for the keypresses of MACHINE starting from its current
+     *  rotor settings.  MACHINE itself is left in the state it was in. */
+    KeystreamTable(Machine machine) {
+        this(machine, MAX_ENTRIES);
+    }
+
+    /** A table for the keypresses of MACHINE starting from its current
+     *  rotor settings, holding at most MAXENTRIES substitution entries.
+     *  MACHINE itself is left in the state it was in. */
+    KeystreamTable(Machine machine, long maxEntries) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        int[] start = machine.rotorSettings();
+        try {
+            build(machine, maxEntries);
+        } finally {
+            machine.restoreSettings(start);
+        }
+    }
+
+    /** Step MACHINE until its rotor settings repeat, recording the
+     *  substitution in effect at each keypress, in at most MAXENTRIES
+     *  entries. */
+    private void build(Machine machine, long maxEntries) {
+        HashMap<Long, Integer> seen = new HashMap<Long, Integer>();
+        int[] tables = new int[_size * INITIAL_STATES];
+        int count = 0;
+        while (true) {
+            machine.step();
+            Long key = encode(machine.rotorSettings());
+            Integer previous = seen.get(key);
+            if (previous != null) {
+                _prefix = previous;
+                _period = count - previous;
+                break;
+            }
+            if ((long) (count + 1) * _size > maxEntries) {
+                throw error("keystream table exceeds %d entries",
+                            maxEntries);
+            }
+            seen.put(key, count);
+            if ((count + 1) * _size > tables.length) {
+                int[] bigger = new int[2 * tables.length];
+                System.arraycopy(tables, 0, bigger, 0, count * _size);
+                tables = bigger;
+            }
+            machine.substitution(tables, count * _size);
+            count++;
+        }
+        _tables = new int[count * _size];
+        System.arraycopy(tables, 0, _tables, 0, _tables.length);
+    }
+
+    /** Return SETTINGS as a single mixed-radix number. */
+    private long encode(int[] settings) {
+        long key = 0;
+        for (int setting : settings) {
+            try {
+                key = Math.addExact(Math.multiplyExact(key, _size), setting);
+            } catch (ArithmeticException excp) {
+                throw error("too many rotor states to tabulate");
+            }
+        }
+        return key;
+    }
+
+    /** Return the number of keypresses before the schedule becomes
+     *  periodic. */
+    int prefix() {
+        return _prefix;
+    }
+
+    /** Return the number of keypresses after which the rotor settings
+     *  repeat. */
+    int period() {
+        return _period;
+    }
+
+    /** Return the alphabet of the tabulated machine. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the index into the stored tables of the state in effect
+     *  at keypress OFFSET (numbering from 0). */
+    int state(long offset) {
+        if (offset < 0) {
+            throw error("negative keypress offset");
+        }
+        if (offset < _prefix + _period) {
+            return (int) offset;
+        }
+        return _prefix + (int) ((offset - _prefix) % _period);
+    }
+
+    /** Return the conversion of C (an index into the alphabet) as the
+     *  keypress numbered OFFSET from the start of the schedule. */
+    int convert(int c, long offset) {
+        return _tables[state(offset) * _size + c];
+    }
+
+    /** Convert MSG[START .. END-1] into OUT starting at OUT[OUTPOS],
+     *  taking MSG[START] to be typed at keypress OFFSET.  Characters
+     *  outside the alphabet are copied unchanged and do not count as
+     *  keypresses.  Returns the offset of the next keypress. */
+    long convert(CharSequence msg, int start, int end, char[] out,
+                 int outPos, long offset) {
+        int state = state(offset);
+        int limit = _prefix + _period;
+        int k = outPos;
+        for (int i = start; i < end; i++) {
+            char c = msg.charAt(i);
+            int index = _alphabet.index(c);
+            if (index < 0) {
+                out[k++] = c;
+            } else {
+                out[k++] = _alphabet.toChar(_tables[state * _size + index]);
+                offset++;
+                state++;
+                if (state == limit) {
+                    state = _prefix;
+                }
+            }
+        }
+        return offset;
+    }
+
+    /** Return the number of keypresses needed to type MSG[START .. END-1],
+     *  that is, the number of its characters in ALPHABET. */
+    static long keypresses(Alphabet alphabet, CharSequence msg,
+                           int start, int end) {
+        long count = 0;
+        for (int i = start; i < end; i++) {
+            if (alphabet.index(msg.charAt(i)) >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Default limit on the number of stored substitution entries. */
+    static final long MAX_ENTRIES = 1L << 24;
+    /** Number of states for which room is allocated initially. */
+    private static final int INITIAL_STATES = 1024;
+
+    /** Alphabet of the tabulated machine. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** Substitution at state K is _tables[K * _size .. (K+1)*_size-1]. */
+    private int[] _tables;
+    /** Number of states before the periodic part of the schedule. */
+    private int _prefix;
+    /** Length of the periodic part of the schedule. */
+    private int _period;
+}
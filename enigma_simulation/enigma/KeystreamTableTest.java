@@ -0,0 +1,79 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamTable class.
+ *  @author Razi Mahmood
+ */
+public class KeystreamTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Settings line used by most tests: the middle rotor starts one
+     *  short of its notch so that the schedule begins with a double
+     *  step. */
+    static final String SETTINGS = "* B Beta III IV I AXLE (YF) (ZH)";
+
+    /** Return a random message of LENGTH characters, mostly letters,
+     *  seeded with SEED. */
+    static String randomMessage(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder msg = new StringBuilder();
+        String chars = UPPER_STRING + "  .,";
+        for (int i = 0; i < length; i++) {
+            msg.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return msg.toString();
+    }
+
+    @Test
+    public void checkPeriod() {
+        Machine machine = navalMachine(SETTINGS);
+        int[] before = machine.rotorSettings();
+        KeystreamTable table = new KeystreamTable(machine);
+        assertArrayEquals(before, machine.rotorSettings());
+        assertEquals(26 * 25 * 26, table.period());
+        assertTrue(table.prefix() < 26 * 26);
+    }
+
+    @Test
+    public void checkMatchesMachine() {
+        Machine machine = navalMachine(SETTINGS);
+        KeystreamTable table = new KeystreamTable(machine);
+        int n = 3 * (table.prefix() + table.period());
+        for (long k = 0; k < n; k++) {
+            int c = (int) (k % 26);
+            assertEquals(msg("keystream", "keypress %d", k),
+                         machine.convert(c), table.convert(c, k));
+        }
+    }
+
+    @Test
+    public void checkOutOfOrder() {
+        String msg = randomMessage(60000, 1);
+        String expected = navalMachine(SETTINGS).convert(msg);
+        KeystreamTable table =
+            new KeystreamTable(navalMachine(SETTINGS));
+        char[] out = new char[msg.length()];
+        int[] cuts = { 0, 17, 9000, 31337, 45000, msg.length() };
+        for (int j = cuts.length - 2; j >= 0; j--) {
+            long offset = KeystreamTable.keypresses(UPPER, msg, 0, cuts[j]);
+            table.convert(msg, cuts[j], cuts[j + 1], out, cuts[j], offset);
+        }
+        assertEquals(expected, new String(out));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkLimit() {
+        new KeystreamTable(navalMachine(SETTINGS), 1000);
+    }
+}
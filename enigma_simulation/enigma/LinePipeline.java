@@ -0,0 +1,193 @@
+package enigma;
+
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** Processes settings and messages read by a Scanner with the same
+ *  results as Main.processInput, in three stages on separate threads:
+ *  a reader, which splits the input into lines; a converter, which
+ *  alone uses the machine, classifying the lines by Main.LineRules,
+ *  applying settings lines, and converting messages; and a writer,
+ *  which groups the converted messages and writes them with
+ *  Main.printMessageLine.  The stages are connected by RingQueues and
+ *  each handles lines in input order, so a settings line acts as a
+ *  barrier: it is applied after every earlier message is converted and
+ *  before any later one, and the output is exactly that of
+ *  Main.processInput.  The converter runs on the thread calling
+ *  process(); an error in any stage stops the others and is thrown
+ *  from there, after the output of the messages preceding it has been
+ *  written.  The reader is not waited for after an error, since it may
+ *  be blocked reading input that has not ended (as from a terminal);
+ *  it is a daemon, and stops at its next line.
+ *  @author Razi Mahmood
+ */
+class LinePipeline {
+
+    /** A pipeline converting the lines of INPUT with MACHINE, using
+     *  MAIN to interpret settings lines and to write output. */
+    LinePipeline(Main main, Machine machine, Scanner input) {
+        this(main, machine, input, DEFAULT_CAPACITY);
+    }
+
+    /** A pipeline converting the lines of INPUT with MACHINE, using
+     *  MAIN to interpret settings lines and to write output, with at
+     *  most CAPACITY lines waiting between each pair of stages. */
+    LinePipeline(Main main, Machine machine, Scanner input, int capacity) {
+        _main = main;
+        _machine = machine;
+        _input = input;
+        _read = new RingQueue<Line>(capacity);
+        _converted = new RingQueue<Line>(capacity);
+    }
+
+    /** Process all of my input. */
+    void process() {
+        Thread reader = new Thread(this::read, "enigma-reader");
+        Thread writer = new Thread(this::write, "enigma-writer-stage");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+        try {
+            convert();
+        } catch (RuntimeException | Error excp) {
+            fail(excp, false);
+        } finally {
+            _read.cancel();
+            _converted.put(END);
+            if (_failure == null) {
+                join(reader);
+            }
+            join(writer);
+        }
+        Throwable failure = _failure;
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    /** The reader stage: pass each line of _input, trimmed, to the
+     *  converter. */
+    private void read() {
+        try {
+            while (_input.hasNext()) {
+                if (!_read.put(new Line(_input.nextLine().trim()))) {
+                    return;
+                }
+            }
+            _read.put(END);
+        } catch (RuntimeException | Error excp) {
+            fail(excp, false);
+        }
+    }
+
+    /** The converter stage: process each line from the reader by the
+     *  rules of Main.LineRules, applying settings lines to _machine and
+     *  passing each blank line and converted message on to the
+     *  writer. */
+    private void convert() {
+        Main.LineRules rules = _main.lineRules(_machine);
+        while (true) {
+            Line item = _read.take();
+            if (item == null) {
+                return;
+            } else if (item == END) {
+                break;
+            }
+            switch (rules.classify(item._text)) {
+            case Main.BLANK_LINE:
+                item._chars = NO_CHARS;
+                break;
+            case Main.SETTINGS_LINE:
+                rules.applySettings(item._text);
+                continue;
+            case Main.MESSAGE_LINE:
+                char[] chars = item._text.toCharArray();
+                rules.convert(chars, 0, chars.length);
+                item._chars = chars;
+                break;
+            default:
+                continue;
+            }
+            if (!_converted.put(item)) {
+                return;
+            }
+        }
+        rules.finish();
+    }
+
+    /** The writer stage: write each line converted, until the end. */
+    private void write() {
+        try {
+            while (true) {
+                Line item = _converted.take();
+                if (item == null || item == END) {
+                    return;
+                }
+                _main.printMessageLine(item._chars, item._chars.length);
+            }
+        } catch (RuntimeException | Error excp) {
+            fail(excp, true);
+        }
+    }
+
+    /** Record FAILURE, if it is the first, and stop the reader and
+     *  converter.  Stop the writer too iff OUTPUT, so that otherwise it
+     *  still writes the lines already converted. */
+    private synchronized void fail(Throwable failure, boolean output) {
+        if (_failure == null) {
+            _failure = failure;
+        }
+        _read.cancel();
+        if (output) {
+            _converted.cancel();
+        }
+    }
+
+    /** Wait for STAGE to finish. */
+    private void join(Thread stage) {
+        try {
+            stage.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            fail(error("interrupted"), true);
+        }
+    }
+
+    /** A line of input passed between stages. */
+    private static final class Line {
+        /** A line whose trimmed text is TEXT. */
+        Line(String text) {
+            _text = text;
+        }
+
+        /** The trimmed text of the line. */
+        private final String _text;
+        /** The converted message (empty for a blank line), once
+         *  converted. */
+        private char[] _chars;
+    }
+
+    /** Default number of lines waiting between stages. */
+    static final int DEFAULT_CAPACITY = 1024;
+    /** The conversion of a blank line. */
+    private static final char[] NO_CHARS = new char[0];
+    /** Passed after the last line. */
+    private static final Line END = new Line("");
+
+    /** Interprets settings lines and writes output. */
+    private final Main _main;
+    /** The machine, used only by the converter. */
+    private final Machine _machine;
+    /** Source of lines, used only by the reader. */
+    private final Scanner _input;
+    /** Lines from the reader to the converter. */
+    private final RingQueue<Line> _read;
+    /** Lines from the converter to the writer. */
+    private final RingQueue<Line> _converted;
+    /** The first error met by any stage, or null. */
+    private volatile Throwable _failure;
+}
@@ -0,0 +1,204 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+
+/** The suite of all JUnit tests for the LinePipeline and RingQueue
+ *  classes.
+ *  @author Razi Mahmood
+ */
+public class LinePipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void checkRingOrder() throws InterruptedException {
+        RingQueue<Integer> ring = new RingQueue<Integer>(3);
+        final int n = 100000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < n; i++) {
+                assertTrue(ring.put(i));
+            }
+        });
+        producer.start();
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, (int) ring.take());
+        }
+        producer.join();
+    }
+
+    @Test
+    public void checkRingCancel() throws InterruptedException {
+        RingQueue<String> ring = new RingQueue<String>(1);
+        assertTrue(ring.put("A"));
+        Thread producer = new Thread(() -> assertFalse(ring.put("B")));
+        producer.start();
+        Thread.sleep(50);
+        ring.cancel();
+        producer.join();
+        assertNull(ring.take());
+    }
+
+    /** Return the output of processing INPUT with CONFIG as if from the
+     *  command line (and so through a LinePipeline), followed by the
+     *  message of the error thrown, if any. */
+    private static String pipelined(String config, String input)
+        throws IOException {
+        File configFile = File.createTempFile("pipeline", ".conf");
+        File inputFile = File.createTempFile("pipeline", ".in");
+        File outputFile = File.createTempFile("pipeline", ".out");
+        try {
+            Files.write(configFile.toPath(), config.getBytes("UTF-8"));
+            Files.write(inputFile.toPath(),
+                        input.getBytes(Charset.defaultCharset()));
+            String error = "";
+            try {
+                new Main(new String[] { configFile.getPath(),
+                                        inputFile.getPath(),
+                                        outputFile.getPath() }).process();
+            } catch (EnigmaException excp) {
+                error = excp.getMessage();
+            }
+            return new String(Files.readAllBytes(outputFile.toPath()),
+                              Charset.defaultCharset()) + error;
+        } finally {
+            configFile.delete();
+            inputFile.delete();
+            outputFile.delete();
+        }
+    }
+
+    /** Return the output of processing INPUT with CONFIG on the calling
+     *  thread alone, followed by the message of the error thrown, if
+     *  any. */
+    static String serial(String config, String input) {
+        Main parser = new Main(new Scanner(config));
+        Machine machine = parser.readConfig();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        String error = "";
+        try {
+            new Main(parser, new Scanner(input), out,
+                     Charset.defaultCharset()).processInput(machine);
+        } catch (EnigmaException excp) {
+            error = excp.getMessage();
+        }
+        out.flush();
+        return new String(bytes.toByteArray(), Charset.defaultCharset())
+            + error;
+    }
+
+    @Test
+    public void checkSameAsSerial() throws IOException {
+        String config = MetricsTest.CONFIG;
+        String[] inputs = {
+            MetricsTest.INPUT,
+            "IGNORED\n\n* B I II AA\nABC\n\n  * B II I ZZ (AB) \nABC\n",
+            "* B I II AA\nABC\n* B I III AA\nABC\n",
+            "ABC\n",
+            "* B I II AA\n",
+            "\n\n",
+        };
+        for (String input : inputs) {
+            assertEquals(input, serial(config, input),
+                         pipelined(config, input));
+        }
+        Random random = new Random(3);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            if (random.nextInt(50) == 0) {
+                input.append(random.nextBoolean() ? "* B I II " : "* B II I ");
+                input.append((char) ('A' + random.nextInt(26)));
+                input.append((char) ('A' + random.nextInt(26)));
+                input.append('\n');
+            } else if (random.nextInt(20) == 0) {
+                input.append('\n');
+            } else {
+                for (int j = random.nextInt(40); j > 0; j--) {
+                    input.append(random.nextInt(8) == 0 ? ' '
+                                 : (char) ('A' + random.nextInt(26)));
+                }
+                input.append('\n');
+            }
+        }
+        String text = "* B I II AA\n" + input;
+        assertEquals(serial(config, text), pipelined(config, text));
+    }
+
+    @Test
+    public void checkErrorWithInputOpen() throws Exception {
+        String text = "* B I II AA\nHELLO\n* B I NONE AA\nWORLD\n";
+        byte[] bytes = text.getBytes(Charset.defaultCharset());
+        CountDownLatch finished = new CountDownLatch(1);
+        InputStream open = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len)
+                throws IOException {
+                if (_pos < bytes.length) {
+                    int n = Math.min(len, bytes.length - _pos);
+                    System.arraycopy(bytes, _pos, buf, off, n);
+                    _pos += n;
+                    return n;
+                }
+                try {
+                    finished.await();
+                } catch (InterruptedException excp) {
+                    throw new IOException(excp);
+                }
+                return -1;
+            }
+
+            /** Number of bytes read. */
+            private int _pos;
+        };
+        File configFile = File.createTempFile("pipeline", ".conf");
+        InputStream stdin = System.in;
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            Files.write(configFile.toPath(),
+                        MetricsTest.CONFIG.getBytes("UTF-8"));
+            System.setIn(open);
+            System.setOut(new PrintStream(output));
+            String error = "";
+            long start = System.nanoTime();
+            try {
+                new Main(new String[] { configFile.getPath() }).process();
+            } catch (EnigmaException excp) {
+                error = excp.getMessage();
+            }
+            long millis = (System.nanoTime() - start) / 1000000;
+            assertTrue("error reported after " + millis + " ms",
+                       millis < 5000);
+            assertEquals(serial(MetricsTest.CONFIG, text),
+                         new String(output.toByteArray(),
+                                    Charset.defaultCharset()) + error);
+        } finally {
+            System.setIn(stdin);
+            System.setOut(stdout);
+            finished.countDown();
+            configFile.delete();
+        }
+    }
+}
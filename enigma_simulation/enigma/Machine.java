@@ -1,8 +1,12 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
 
 import static enigma.EnigmaException.*;
 
@@ -23,6 +27,38 @@ class Machine {
         _numRotors = numRotors;
         _pawls = pawls;
         _allPossibleRotors = allRotors;
+        _rotors = allRotors.toArray(new Rotor[allRotors.size()]);
+        _rotorIds = new HashMap<String, Integer>();
+        for (int id = 0; id < _rotors.length; id++) {
+            _rotorIds.putIfAbsent(_rotors[id].name(), id);
+        }
+    }
+
+    /** A copy of ORIGINAL (see copy()). */
+    private Machine(Machine original) {
+        _alphabet = original._alphabet;
+        _numRotors = original._numRotors;
+        _pawls = original._pawls;
+        _allPossibleRotors = original._allPossibleRotors;
+        _rotors = original._rotors;
+        _rotorIds = original._rotorIds;
+        if (original._storeRotors != null) {
+            _storeRotors = original._storeRotors.clone();
+            _positions = original._positions.clone();
+            _rings = original._rings.clone();
+            _forwardTables = original._forwardTables.clone();
+            _inverseTables = original._inverseTables.clone();
+            describeSlots();
+        }
+        if (original._slotIds != null) {
+            _slotIds = original._slotIds.clone();
+        }
+        _plugboard = original._plugboard;
+        if (original._edgesValid) {
+            _entry = original._entry;
+            _exit = original._exit;
+            _edgesValid = true;
+        }
     }
 
     /** Return the number of rotor slots I have. */
@@ -46,59 +82,218 @@ class Machine {
         }
 
         int minRotorLength = Math.min(_numRotors, rotors.length);
-        ArrayList<Rotor> tempRotors = null;
-        _storeRotors = new Rotor[minRotorLength];
-        Rotor testRotor;
+        int[] ids = new int[minRotorLength];
+        int found = 0;
 
         for (int i = 0; i < minRotorLength; i++) {
-            testRotor = extractRotor(rotors[i]);
-
-            if (testRotor != null) {
-
-                if (i == 0) {
-                    if (!isReflector(testRotor)) {
-                        throw new EnigmaException("leftmost is not reflector");
-                    }
-                } else if ((i >= 1) && (i < (minRotorLength - 1))) {
-                    if (isReflector(testRotor)) {
-                        throw new EnigmaException("Reflector in middle");
-                    }
-                } else if (i == (minRotorLength - 1)) {
-                    if (!isMovingRotor(testRotor)) {
-                        throw new EnigmaException("rightmost should move");
-                    }
-                }
-                if (tempRotors == null) {
-                    tempRotors = new ArrayList<Rotor>();
-                }
-                tempRotors.add(testRotor);
+            int id = rotorId(rotors[i]);
+            if (id >= 0) {
+                checkSlot(_rotors[id], i, minRotorLength);
+                ids[found] = id;
+                found += 1;
             }
-            if (tempRotors != null) {
-                _storeRotors = new Rotor[tempRotors.size()];
-                _storeRotors = tempRotors.toArray(_storeRotors);
+        }
+        if (found == 0) {
+            Rotor fast = fastRotor();
+            _storeRotors = new Rotor[minRotorLength];
+            _slotIds = null;
+            _positions = new int[minRotorLength];
+            _rings = new int[minRotorLength];
+            _forwardTables = new int[minRotorLength][];
+            _inverseTables = new int[minRotorLength][];
+            describeSlots();
+            invalidate(fast);
+        } else {
+            install(ids, found);
+        }
+    }
+
+    /** Set my rotor slots to the available rotors whose IDs (as returned
+     *  by rotorId) are IDS, IDS[0] being the reflector's.  Unlike
+     *  insertRotors(String[]), this allocates nothing once a machine has
+     *  held that many rotors, and rebuilds only the tables that depend
+     *  on the rotors that changed, so that searches may change rotors
+     *  cheaply. */
+    void insertRotors(int[] ids) {
+        if (ids.length > _numRotors) {
+            throw new EnigmaException("Length of rotors is inconsistent");
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] < 0 || ids[i] >= _rotors.length) {
+                throw error("no rotor with ID %d", ids[i]);
             }
+            checkSlot(_rotors[ids[i]], i, ids.length);
         }
+        install(ids, ids.length);
     }
 
-    /**Meant to extract the specific Rotor based on the passed in name.
-     @param name of rotor
-     @return test **/
-    Rotor extractRotor(String name) {
-        Iterator it = _allPossibleRotors.iterator();
-        Rotor test = null;
-        boolean found = false;
+    /** Check that ROTOR may be placed in slot I of the LENGTH slots
+     *  being filled. */
+    private void checkSlot(Rotor rotor, int i, int length) {
+        if (i == 0) {
+            if (!isReflector(rotor)) {
+                throw new EnigmaException("leftmost is not reflector");
+            }
+        } else if (i < length - 1) {
+            if (isReflector(rotor)) {
+                throw new EnigmaException("Reflector in middle");
+            }
+        } else if (!isMovingRotor(rotor)) {
+            throw new EnigmaException("rightmost should move");
+        }
+    }
 
-        while ((!found) && (it.hasNext())) {
-            test = (Rotor) it.next();
-            if (test.name().equals(name)) {
-                found = true;
+    /** Fill my first COUNT rotor slots with the rotors whose IDs are in
+     *  IDS, at setting 0 and ring setting 0, reusing the slot arrays if
+     *  they have that length. */
+    private void install(int[] ids, int count) {
+        Rotor fast = fastRotor();
+        int ringed = firstRing();
+        if (_storeRotors == null || _storeRotors.length != count
+            || _slotIds == null) {
+            _storeRotors = new Rotor[count];
+            _slotIds = new int[count];
+            _positions = new int[count];
+            _rings = new int[count];
+            _forwardTables = new int[count][];
+            _inverseTables = new int[count][];
+        }
+        for (int i = 0; i < count; i++) {
+            _slotIds[i] = ids[i];
+            _storeRotors[i] = _rotors[ids[i]];
+            _positions[i] = 0;
+            wire(i, 0);
+        }
+        describeSlots();
+        invalidate(fast);
+        if (ringed >= 0) {
+            forgetRings(ringed);
+        }
+    }
+
+    /** Return the leftmost of my slots whose ring setting is not 0, or
+     *  -1 if there is none. */
+    private int firstRing() {
+        if (_rings != null) {
+            for (int i = 0; i < _rings.length; i++) {
+                if (_rings[i] != 0) {
+                    return i;
+                }
             }
         }
-        if (found) {
-            return test;
+        return -1;
+    }
+
+    /** Discard the cached tables built with the ring settings of slots
+     *  FIRST and beyond, which have changed.  The tables of the inner
+     *  rotors are kept by slot and setting only, and the edge tables
+     *  by the rightmost rotor only, so neither notices a ring
+     *  change. */
+    private void forgetRings(int first) {
+        if (_layerRotors != null && first < _layerRotors.length) {
+            Arrays.fill(_layerRotors, first, _layerRotors.length, null);
+        }
+        _innerValid = false;
+        _edgesValid = false;
+    }
+
+    /** Fill in _kinds, _notches, and _pawlPairs for the rotors in
+     *  _storeRotors, reusing those arrays if they have the right
+     *  length.  Empty slots hold fixed rotors without notches. */
+    private void describeSlots() {
+        int count = _storeRotors.length;
+        if (_kinds == null || _kinds.length != count) {
+            _kinds = new RotorKind[count];
+            _notches = new long[count][];
+            _pawlPairs = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            Rotor rotor = _storeRotors[i];
+            _kinds[i] = rotor == null ? RotorKind.FIXED : rotor.kind();
+            _notches[i] = rotor == null ? NO_NOTCHES : rotor.notchBits();
+            _pawlPairs[i] = i > 0 && _kinds[i] == RotorKind.MOVING
+                && _kinds[i - 1] == RotorKind.MOVING ? 1 : 0;
+        }
+    }
+
+    /** Set the ring setting of the rotor in slot I to RING, filling in
+     *  its wiring tables.  A rotor whose ring is turned RING places from
+     *  its letters converts as its permutation conjugated by a shift of
+     *  -RING, so the offset is folded into the tables once here, and
+     *  conversion costs the same whatever the ring settings.  With RING
+     *  0, the rotor's own tables are shared. */
+    private void wire(int i, int ring) {
+        Permutation wiring = _storeRotors[i].permutation();
+        _rings[i] = ring;
+        if (ring == 0) {
+            _forwardTables[i] = wiring.forwardTable();
+            _inverseTables[i] = wiring.inverseTable();
         } else {
+            int[] forward = new int[wiring.size()];
+            int[] inverse = new int[wiring.size()];
+            Permutation.conjugate(wiring.forwardTable(), -ring, forward);
+            Permutation.invert(forward, inverse);
+            _forwardTables[i] = forward;
+            _inverseTables[i] = inverse;
+        }
+    }
+
+    /** Mark my cached tables as out of date after my rotors have been
+     *  replaced, when the rightmost rotor was FAST (or null).  The
+     *  tables for the rightmost rotor and plugboard are kept if that
+     *  rotor is unchanged. */
+    private void invalidate(Rotor fast) {
+        _innerValid = false;
+        if (fast == null || fast != fastRotor()) {
+            _edgesValid = false;
+        }
+    }
+
+    /** Return my rightmost rotor, or null if I have fewer than two. */
+    private Rotor fastRotor() {
+        if (_storeRotors == null || _storeRotors.length < 2) {
             return null;
         }
+        return _storeRotors[_storeRotors.length - 1];
+    }
+
+    /** Return the number of rotors available to me. */
+    int numAvailableRotors() {
+        return _rotors.length;
+    }
+
+    /** Return the ID of the available rotor named NAME (the first such,
+     *  if there are several), a number in the range 0 ..
+     *  numAvailableRotors() - 1, or -1 if there is none. */
+    int rotorId(String name) {
+        Integer id = _rotorIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /** Return the IDs of the available rotors named NAMES, for use with
+     *  insertRotors(int[]). */
+    int[] rotorIds(String[] names) {
+        int[] ids = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ids[i] = rotorId(names[i]);
+            if (ids[i] < 0) {
+                throw error("no rotor named %s", names[i]);
+            }
+        }
+        return ids;
+    }
+
+    /** Return the available rotor whose ID is ID. */
+    Rotor rotor(int id) {
+        return _rotors[id];
+    }
+
+    /**Meant to extract the specific Rotor based on the passed in name.
+     @param name of rotor
+     @return test **/
+    Rotor extractRotor(String name) {
+        int id = rotorId(name);
+        return id < 0 ? null : _rotors[id];
     }
     /**Used to process the odd lines taken directly from the input file.
      * @param directiveline new line from file
@@ -110,14 +305,21 @@ class Machine {
             rotornames[i - 1] = linetokens[i];
         }
         String settings = linetokens[rotornames.length + 1];
+        int first = rotornames.length + 2;
+        String rings = null;
+        if (first < linetokens.length && !linetokens[first].startsWith("(")) {
+            rings = linetokens[first];
+            first += 1;
+        }
         String plugboard = "";
-        for (int i = rotornames.length + 2; i < linetokens.length; i++) {
+        for (int i = first; i < linetokens.length; i++) {
             plugboard += linetokens[i];
         }
         Permutation myplugboard = new Permutation(plugboard, _alphabet);
         setPlugboard(myplugboard);
         insertRotors(rotornames);
         setRotors(settings);
+        setRings(rings);
     }
 
 
@@ -128,13 +330,71 @@ class Machine {
         char c = ' ';
         for (int i = 0; i < setting.length(); i++) {
             c = setting.charAt(i);
-            _storeRotors[i + 1].set(c);
+            _positions[i + 1] = _storeRotors[i + 1].alphabet().toInt(c);
+        }
+        _innerValid = false;
+    }
+
+    /** Set the ring settings (Ringstellung) of my rotors according to
+     *  RINGS, a string of numRotors()-1 characters in my alphabet, the
+     *  first for the leftmost rotor after the reflector; a null RINGS
+     *  sets them all to the first character of my alphabet, as does
+     *  inserting rotors.  The notches, which turn with the letters,
+     *  are unaffected. */
+    void setRings(String rings) {
+        if (rings != null && rings.length() != _storeRotors.length - 1) {
+            throw error("Ring settings wrong length");
+        }
+        int[] indices = new int[_storeRotors.length];
+        for (int i = 1; rings != null && i < indices.length; i++) {
+            indices[i] = _alphabet.index(rings.charAt(i - 1));
+            if (indices[i] < 0) {
+                throw error("Bad character in ring setting");
+            }
         }
+        setRings(indices);
+    }
+
+    /** Set the ring settings of my rotors to RINGS, alphabet indices as
+     *  returned by ringSettings(). */
+    void setRings(int[] rings) {
+        if (rings.length != _storeRotors.length) {
+            throw error("Ring settings wrong length");
+        }
+        for (int i = 1; i < rings.length; i++) {
+            if (rings[i] < 0 || rings[i] >= _alphabet.size()) {
+                throw error("Bad ring setting");
+            }
+            if (rings[i] != _rings[i]) {
+                wire(i, rings[i]);
+            }
+        }
+        forgetRings(0);
+    }
+
+    /** Return the ring settings of my rotors, as alphabet indices, with
+     *  the reflector's (always 0) at index 0. */
+    int[] ringSettings() {
+        return _rings.clone();
+    }
+
+    /** Return the IDs (as returned by rotorId) of the rotors in my
+     *  slots, the reflector's first, or null if some slot was filled
+     *  other than from my available rotors. */
+    int[] slotIds() {
+        return _slotIds == null ? null : _slotIds.clone();
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        plugTable();
+        return _plugboard;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
+        _edgesValid = false;
     }
 
     /** Create a character mapping for the plugboard.
@@ -150,7 +410,7 @@ class Machine {
      * @return check type
      * */
     boolean isMovingRotor(Rotor rotor) {
-        return MovingRotor.class.isInstance(rotor);
+        return rotor != null && rotor.kind() == RotorKind.MOVING;
     }
     /**Check if the rotor is fixed.
      * @param rotor test rotor
@@ -164,7 +424,7 @@ class Machine {
      * @return check type
      * */
     boolean isReflector(Rotor rotor) {
-        return Reflector.class.isInstance(rotor);
+        return rotor != null && rotor.kind() == RotorKind.REFLECTOR;
     }
 
     /**Check if the rotor is the rightmost.
@@ -176,76 +436,418 @@ class Machine {
     }
 
     /**Used to handle whether a rotor and it's left neighbor can move.
-     * @param cmap mappedcharacter
-     * @return another mapped C
+     * Advances the rotors for one keypress.  The rightmost rotor always
+     * moves, if it can.  A rotor at a notch whose own pawl and whose
+     * left neighbour's pawl are both present pushes both one place
+     * (which double-steps a middle rotor), unless the rotor to its
+     * right has just pushed it.  All of this is computed with integer
+     * flags from the slot tables filled in by describeSlots, without
+     * allocating or examining the rotors' classes.
+     * @return true iff some rotor other than the rightmost one moved
      */
-    int moveForward(int cmap) {
-        Rotor rotor;
-        boolean[] hasAdvanced = new boolean[_storeRotors.length];
-        for (int i = 0; i < _storeRotors.length; i++) {
-            hasAdvanced[i] = false;
-        }
-        for (int i = _storeRotors.length - 1; i > 0; i--) {
-            rotor = _storeRotors[i];
-            if (isMovingRotor(rotor)) {
-                if (isRightmostRotor(i)) {
-                    if (rotor.atNotch()) {
-                        rotor.advance();
-                        if (isMovingRotor(_storeRotors[i - 1])) {
-                            _storeRotors[i - 1].advance();
-                            hasAdvanced[i - 1] = true;
-                        }
-                    } else {
-                        rotor.advance();
-                    }
-                } else {
-                    if ((!hasAdvanced[i]) && (rotor.atNotch())) {
-                        if (isMovingRotor(_storeRotors[i - 1])) {
-                            rotor.advance();
-                            _storeRotors[i - 1].advance();
-                            hasAdvanced[i - 1] = true;
-                        }
-                    }
+    boolean moveForward() {
+        int last = _storeRotors.length - 1;
+        if (last < 1) {
+            return false;
+        }
+        int pushed = _pawlPairs[last] & notchAt(last);
+        int slowMoved = pushed;
+        advance(last, _kinds[last] == RotorKind.MOVING ? 1 : 0);
+        for (int i = last - 1; i > 0; i--) {
+            int push = _pawlPairs[i] & notchAt(i) & (pushed ^ 1);
+            advance(i, push | pushed);
+            slowMoved |= push;
+            pushed = push;
+        }
+        advance(0, pushed);
+        return slowMoved != 0;
+    }
+
+    /** Return 1 if the rotor in slot I is at a notch, and 0 if not. */
+    private int notchAt(int i) {
+        int p = _positions[i];
+        return (int) (_notches[i][p >>> LOG_LONG_BITS] >>> p) & 1;
+    }
+
+    /** Advance the rotor in slot I by STEP, which is 0 or 1. */
+    private void advance(int i, int step) {
+        int next = _positions[i] + step;
+        int size = _alphabet.size();
+        _positions[i] = next - (size & ((size - 1 - next) >> SIGN));
+    }
+
+    /** Recompute _inner, the composition of every rotor to the left of
+     *  the rightmost one, through the reflector and back, at the current
+     *  rotor settings.  It is built in layers, one per rotor, each
+     *  wrapping the one before in a rotor's forward and backward
+     *  conversions.  Only the layers for the rotors that have moved (or
+     *  been replaced) since the last call, and those outside them, are
+     *  rebuilt; usually only the rotor next to the rightmost has
+     *  moved.  The table lookups are random, so values are reduced
+     *  modulo the alphabet size without branches: Y + ((Y >> SIGN) &
+     *  size) is Y modulo size for -size <= Y < size. */
+    private void buildInner() {
+        int size = _alphabet.size();
+        int count = Math.max(1, _storeRotors.length - 1);
+        int first = 0;
+        if (_layers == null || _layers.length != count
+            || _layers[0].length != size) {
+            _layers = new int[count][size];
+            _layerRotors = new Rotor[count];
+            _layerSettings = new int[count];
+        } else {
+            while (first < count && _layerRotors[first] == _storeRotors[first]
+                   && _layerSettings[first]
+                      == _positions[first]) {
+                first++;
+            }
+        }
+        for (int i = first; i < count; i++) {
+            Rotor rotor = _storeRotors[i];
+            int setting = _positions[i];
+            int[] forward = _forwardTables[i];
+            int[] layer = _layers[i];
+            if (i == 0) {
+                for (int x = 0; x < size; x++) {
+                    int y = x + setting - size;
+                    y = forward[y + ((y >> SIGN) & size)] - setting;
+                    layer[x] = y + ((y >> SIGN) & size);
+                }
+            } else {
+                int[] inverse = _inverseTables[i];
+                int[] below = _layers[i - 1];
+                for (int x = 0; x < size; x++) {
+                    int y = x + setting - size;
+                    y = forward[y + ((y >> SIGN) & size)] - setting;
+                    y = below[y + ((y >> SIGN) & size)] + setting - size;
+                    y = inverse[y + ((y >> SIGN) & size)] - setting;
+                    layer[x] = y + ((y >> SIGN) & size);
                 }
-                cmap = rotor.convertForward(cmap);
-            } else if (isFixedRotor(rotor)) {
-                cmap = rotor.convertForward(cmap);
             }
+            _layerRotors[i] = rotor;
+            _layerSettings[i] = setting;
         }
-        return cmap;
+        _inner = _layers[count - 1];
+        _innerValid = true;
     }
 
-    /**Used to convert the rotor backward after hitting the reflector.
-     * @param cmap mappedcharacter
-     * @return another mapped char
-     * */
-    int moveBackward(int cmap) {
-        Rotor rotor;
-        for (int i = 1; i < _storeRotors.length; i++) {
-            rotor = _storeRotors[i];
-            cmap = rotor.convertBackward(cmap);
+    /** Recompute _entry and _exit, the plugboard folded together with
+     *  the rightmost rotor at each of its settings, if they fit within
+     *  EDGE_TABLE_LIMIT entries; otherwise leave them null so that the
+     *  rightmost rotor is applied directly. */
+    private void buildEdges() {
+        int size = _alphabet.size();
+        if (_storeRotors.length < 2 || size * size > EDGE_TABLE_LIMIT) {
+            _entry = null;
+            _exit = null;
+        } else {
+            int[] plug = plugTable();
+            _entry = new int[size * size];
+            _exit = new int[size * size];
+            for (int s = 0; s < size; s++) {
+                for (int x = 0; x < size; x++) {
+                    _entry[s * size + x] = fastForward(plug[x], s);
+                    _exit[s * size + x] = plug[fastBackward(x, s)];
+                }
+            }
         }
-        return cmap;
+        _edgesValid = true;
+    }
+
+    /** Return the forward table of my plugboard, treating a missing
+     *  plugboard as the identity. */
+    private int[] plugTable() {
+        if (_plugboard == null) {
+            _plugboard = new Permutation("", _alphabet);
+        }
+        return _plugboard.forwardTable();
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
-     *  the machine. */
+     *  the machine.  Only the part of the machine to the left of the
+     *  rightmost rotor is cached as a single table, since the rightmost
+     *  rotor moves on every keypress; that table is rebuilt only when
+     *  one of those rotors moves. */
     int convert(int c) {
+        step();
+        return substitute(c);
+    }
+
+    /** Convert TEXT[START .. END-1], characters given as indices in
+     *  the range 0..alphabet size - 1, in place, as if by convert(int)
+     *  on each in turn.  Runs of keypresses during which only the
+     *  rightmost rotor moves are handed to RUNS as a whole, without
+     *  stepping the machine for each character.  The keypresses are
+     *  recorded in the current Metrics, if any. */
+    void convert(int[] text, int start, int end) {
+        int i = start;
+        int slow = 0;
+        while (i < end) {
+            long run = quietKeypresses();
+            if (run == 0) {
+                if (step()) {
+                    slow += 1;
+                }
+                text[i] = substitute(text[i]);
+                i++;
+                continue;
+            }
+            if (!_edgesValid) {
+                buildEdges();
+            }
+            if (!_innerValid) {
+                buildInner();
+            }
+            if (_entry == null) {
+                text[i] = convert(text[i]);
+                i++;
+                continue;
+            }
+            int n = (int) Math.min(run, end - i);
+            int last = _storeRotors.length - 1;
+            int setting = _positions[last];
+            int size = _alphabet.size();
+            RUNS.convert(text, i, i + n, setting, size,
+                         _entry, _inner, _exit);
+            _positions[last] = (int) ((setting + (long) n) % size);
+            i += n;
+        }
+        Metrics.stepped(end - start, slow);
+    }
+
+    /** Return the RunConverter to be used by every machine: a
+     *  VectorRunConverter if that class, which is built separately and
+     *  needs the jdk.incubator.vector module, can be loaded, and
+     *  otherwise a ScalarRunConverter.  Setting the system property
+     *  enigma.vector to false forces the latter. */
+    private static RunConverter loadRunConverter() {
+        if (!Boolean.parseBoolean(System.getProperty("enigma.vector",
+                                                     "true"))) {
+            return new ScalarRunConverter();
+        }
+        try {
+            return (RunConverter) Class.forName("enigma.VectorRunConverter")
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return new ScalarRunConverter();
+        }
+    }
+
+    /** Advance the rotors for one keypress without converting anything,
+     *  invalidating the cached tables as needed.  Returns true iff some
+     *  rotor other than the rightmost one moved. */
+    boolean step() {
+        if (moveForward()) {
+            _innerValid = false;
+            return true;
+        }
+        return false;
+    }
 
-        int mappedC = mapInPlugboard(_alphabet.toChar(c));
-        mappedC = moveForward(mappedC);
+    /** Return the conversion of C at the current rotor settings, without
+     *  advancing the machine. */
+    int substitute(int c) {
+        if (!_edgesValid) {
+            buildEdges();
+        }
+        if (!_innerValid) {
+            buildInner();
+        }
+        if (_storeRotors.length < 2) {
+            int[] plug = plugTable();
+            return plug[_inner[plug[c]]];
+        }
+        int s = _positions[_storeRotors.length - 1];
+        if (_entry != null) {
+            int row = s * _alphabet.size();
+            return _exit[row + _inner[_entry[row + c]]];
+        }
+        int[] plug = plugTable();
+        int y = fastForward(plug[c], s);
+        return plug[fastBackward(_inner[y], s)];
+    }
 
-        mappedC = _storeRotors[0].convertForward(mappedC);
-        mappedC = moveBackward(mappedC);
-        int outputC = mapInPlugboard(_alphabet.toChar(mappedC));
-        return outputC;
+    /** Return the conversion of X by my rightmost rotor, with its ring
+     *  setting, at setting S. */
+    private int fastForward(int x, int s) {
+        int size = _alphabet.size();
+        int y = _forwardTables[_storeRotors.length - 1][(x + s) % size] - s;
+        return y < 0 ? y + size : y;
+    }
+
+    /** Return the conversion of X by the inverse of my rightmost rotor,
+     *  with its ring setting, at setting S. */
+    private int fastBackward(int x, int s) {
+        int size = _alphabet.size();
+        int y = _inverseTables[_storeRotors.length - 1][(x + s) % size] - s;
+        return y < 0 ? y + size : y;
+    }
+
+    /** Fill OUT[OFFSET .. OFFSET+alphabet size-1] with the complete
+     *  substitution performed at the current rotor settings, without
+     *  advancing the machine. */
+    void substitution(int[] out, int offset) {
+        for (int x = 0; x < _alphabet.size(); x++) {
+            out[offset + x] = substitute(x);
+        }
+    }
+
+    /** Fill OUT[OFFSET .. OFFSET+size*size-1] with the substitution
+     *  performed at each setting S of my rightmost rotor, the others
+     *  keeping their current settings, storing that for S starting at
+     *  OUT[OFFSET + S * size], where size is the size of my alphabet.
+     *  My settings are left unchanged. */
+    void fastSubstitutions(int[] out, int offset) {
+        int last = _storeRotors.length - 1;
+        int saved = _positions[last];
+        int size = _alphabet.size();
+        try {
+            for (int s = 0; s < size; s++) {
+                _positions[last] = s;
+                substitution(out, offset + s * size);
+            }
+        } finally {
+            _positions[last] = saved;
+        }
+    }
+
+    /** Return the current settings of my rotors, with the reflector's
+     *  at index 0. */
+    int[] rotorSettings() {
+        return _positions.clone();
+    }
+
+    /** Restore my rotors to SETTINGS, as returned by rotorSettings(). */
+    void restoreSettings(int[] settings) {
+        if (settings.length != _storeRotors.length) {
+            throw new EnigmaException("wrong number of rotor settings");
+        }
+        for (int i = 1; i < settings.length; i++) {
+            _positions[i] = _storeRotors[i].permutation().wrap(settings[i]);
+        }
+        _innerValid = false;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return every rotor order that can be inserted into me:
+     *  a reflector, then distinct non-moving rotors for the slots
+     *  without pawls, then distinct moving rotors for the slots with
+     *  pawls. */
+    List<String[]> rotorOrders() {
+        ArrayList<String> reflectors = new ArrayList<String>();
+        ArrayList<String> fixed = new ArrayList<String>();
+        ArrayList<String> moving = new ArrayList<String>();
+        for (Rotor rotor : _allPossibleRotors) {
+            if (isReflector(rotor)) {
+                reflectors.add(rotor.name());
+            } else if (isMovingRotor(rotor)) {
+                moving.add(rotor.name());
+            } else {
+                fixed.add(rotor.name());
+            }
+        }
+        ArrayList<String[]> result = new ArrayList<String[]>();
+        String[] order = new String[_numRotors];
+        for (String reflector : reflectors) {
+            order[0] = reflector;
+            arrange(order, 1, _numRotors - _pawls, fixed, moving, result);
+        }
+        return result;
+    }
+
+    /** Add to RESULT every completion of ORDER[0 .. K-1] in which slots
+     *  before FIRSTMOVING hold distinct names from FIXED and the others
+     *  distinct names from MOVING. */
+    private static void arrange(String[] order, int k, int firstMoving,
+                                List<String> fixed, List<String> moving,
+                                List<String[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<String> choices = k < firstMoving ? fixed : moving;
+        for (String name : choices) {
+            boolean used = false;
+            for (int i = 1; !used && i < k; i++) {
+                used = order[i].equals(name);
+            }
+            if (!used) {
+                order[k] = name;
+                arrange(order, k + 1, firstMoving, fixed, moving, result);
+            }
+        }
+    }
+
+    /** Return a new machine with my configuration, rotors, plugboard,
+     *  and rotor settings, whose settings change independently of mine.
+     *  Rotors hold no settings, so the copy shares my rotors and their
+     *  registry, and copies only my slots and settings. */
+    Machine copy() {
+        return new Machine(this);
+    }
+
+    /** Return me to the state I was in when constructed: no rotors
+     *  inserted and no plugboard. */
+    void reset() {
+        _storeRotors = null;
+        _slotIds = null;
+        _positions = null;
+        _plugboard = null;
+        _innerValid = false;
+        _edgesValid = false;
+    }
+
+    /** Advance my rotors as if N characters had been converted, without
+     *  converting anything.  Runs of keypresses in which only the
+     *  rightmost rotor moves are skipped in a single step, so the cost
+     *  is proportional to the number of notch events rather than to
+     *  N. */
+    void seek(long n) {
+        if (n < 0) {
+            throw new EnigmaException("cannot seek backwards");
+        }
+        while (n > 0) {
+            long run = quietKeypresses();
+            if (run == 0) {
+                step();
+                n--;
+            } else {
+                run = Math.min(run, n);
+                int last = _storeRotors.length - 1;
+                if (_kinds[last] == RotorKind.MOVING) {
+                    _positions[last] = (int) ((_positions[last] + run)
+                                              % _storeRotors[last].size());
+                }
+                n -= run;
+            }
+        }
+    }
+
+    /** Return the number of upcoming keypresses during which no rotor
+     *  other than the rightmost one moves (Long.MAX_VALUE if that is
+     *  true of all of them). */
+    private long quietKeypresses() {
+        int last = _storeRotors.length - 1;
+        for (int i = last - 1; i > 0; i--) {
+            if (_pawlPairs[i] != 0 && notchAt(i) != 0) {
+                return 0;
+            }
+        }
+        if (last < 1 || _pawlPairs[last] == 0) {
+            return Long.MAX_VALUE;
+        }
+        int steps = _storeRotors[last].stepsToNotch(_positions[last]);
+        return steps < 0 ? Long.MAX_VALUE : steps;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        char c;
         if (msg == null) {
             return msg;
         }
@@ -253,18 +855,205 @@ class Machine {
             return msg;
         }
 
-        String convertedString = "";
-        char add;
-        for (int i = 0; i < msg.length(); i++) {
-            c = msg.charAt(i);
-            if (_alphabet.contains(c)) {
-                add = _alphabet.toChar(convert(_alphabet.toInt(c)));
-                convertedString += add;
-            } else {
-                convertedString += c;
+        char[] converted = new char[msg.length()];
+        convert(msg, 0, msg.length(), converted, 0);
+        return new String(converted);
+    }
+
+    /** Convert the characters MSG[START .. END-1] into OUT, starting at
+     *  OUT[OUTPOS], updating the state of the rotors accordingly.
+     *  Characters outside my alphabet are copied unchanged.  Returns the
+     *  number of characters written, END - START. */
+    int convert(CharSequence msg, int start, int end, char[] out,
+                int outPos) {
+        long started = Metrics.start();
+        int[] text = runText();
+        int k = outPos;
+        for (int i = start; i < end; i += RUN_BUFFER) {
+            int stop = Math.min(end, i + RUN_BUFFER);
+            int n = 0;
+            for (int j = i; j < stop; j++) {
+                int index = _alphabet.index(msg.charAt(j));
+                if (index >= 0) {
+                    text[n++] = index;
+                }
+            }
+            convert(text, 0, n);
+            n = 0;
+            for (int j = i; j < stop; j++) {
+                char c = msg.charAt(j);
+                out[k++] = _alphabet.contains(c)
+                    ? _alphabet.toChar(text[n++]) : c;
+            }
+        }
+        Metrics.converted(end - start, started);
+        return end - start;
+    }
+
+    /** Convert the characters MSG[START .. END-1] into OUT, starting at
+     *  OUT[OUTPOS], as for convert(CharSequence, int, int, char[], int).
+     *  MSG and OUT may be the same array, in which case the conversion
+     *  is done in place.  Returns the number of characters written. */
+    int convert(char[] msg, int start, int end, char[] out, int outPos) {
+        long started = Metrics.start();
+        int[] text = runText();
+        int k = outPos;
+        for (int i = start; i < end; i += RUN_BUFFER) {
+            int stop = Math.min(end, i + RUN_BUFFER);
+            int n = 0;
+            for (int j = i; j < stop; j++) {
+                int index = _alphabet.index(msg[j]);
+                if (index >= 0) {
+                    text[n++] = index;
+                }
+            }
+            convert(text, 0, n);
+            n = 0;
+            for (int j = i; j < stop; j++) {
+                char c = msg[j];
+                out[k++] = _alphabet.contains(c)
+                    ? _alphabet.toChar(text[n++]) : c;
+            }
+        }
+        Metrics.converted(end - start, started);
+        return end - start;
+    }
+
+    /** Convert the remaining characters of IN into OUT, advancing the
+     *  positions of both buffers, until either IN is exhausted or OUT is
+     *  full.  Returns the number of characters converted. */
+    int convert(CharBuffer in, CharBuffer out) {
+        int n = Math.min(in.remaining(), out.remaining());
+        if (in.hasArray() && out.hasArray()) {
+            int inPos = in.arrayOffset() + in.position();
+            int outPos = out.arrayOffset() + out.position();
+            convert(in.array(), inPos, inPos + n, out.array(), outPos);
+            in.position(in.position() + n);
+            out.position(out.position() + n);
+        } else {
+            for (int i = 0; i < n; i++) {
+                out.put(convertChar(in.get()));
+            }
+        }
+        return n;
+    }
+
+    /** Convert the bytes MSG[START .. END-1] into OUT, starting at
+     *  OUT[OUTPOS], updating the state of the rotors accordingly.  Each
+     *  byte stands for the character whose code is its unsigned value,
+     *  so every character of my alphabet must be such a character (as
+     *  with Alphabet.bytes()).  Bytes outside my alphabet are copied
+     *  unchanged.  MSG and OUT may be the same array, in which case the
+     *  conversion is done in place.  Returns the number of bytes
+     *  written, END - START. */
+    int convert(byte[] msg, int start, int end, byte[] out, int outPos) {
+        checkSingleByte();
+        long started = Metrics.start();
+        int[] text = runText();
+        int k = outPos;
+        for (int i = start; i < end; i += RUN_BUFFER) {
+            int stop = Math.min(end, i + RUN_BUFFER);
+            int n = 0;
+            for (int j = i; j < stop; j++) {
+                int index = _alphabet.index((char) (msg[j] & BYTE_MASK));
+                if (index >= 0) {
+                    text[n++] = index;
+                }
+            }
+            convert(text, 0, n);
+            n = 0;
+            for (int j = i; j < stop; j++) {
+                byte b = msg[j];
+                out[k++] = _alphabet.contains((char) (b & BYTE_MASK))
+                    ? (byte) _alphabet.toChar(text[n++]) : b;
+            }
+        }
+        Metrics.converted(end - start, started);
+        return end - start;
+    }
+
+    /** Convert the remaining bytes of IN into OUT, advancing the
+     *  positions of both buffers, until either IN is exhausted or OUT is
+     *  full, as for convert(byte[], int, int, byte[], int).  Returns the
+     *  number of bytes converted. */
+    int convert(ByteBuffer in, ByteBuffer out) {
+        checkSingleByte();
+        int n = Math.min(in.remaining(), out.remaining());
+        if (in.hasArray() && out.hasArray()) {
+            int inPos = in.arrayOffset() + in.position();
+            int outPos = out.arrayOffset() + out.position();
+            convert(in.array(), inPos, inPos + n, out.array(), outPos);
+            in.position(in.position() + n);
+            out.position(out.position() + n);
+        } else {
+            for (int i = 0; i < n; i++) {
+                out.put(convertByte(in.get()));
+            }
+        }
+        return n;
+    }
+
+    /** Convert the remaining bytes of BUFFER in place, as for
+     *  convert(byte[], int, int, byte[], int), advancing its position to
+     *  its limit.  Returns the number of bytes converted. */
+    int convert(ByteBuffer buffer) {
+        checkSingleByte();
+        int start = buffer.position();
+        int end = buffer.limit();
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset();
+            convert(buffer.array(), offset + start, offset + end,
+                    buffer.array(), offset + start);
+        } else {
+            if (_runBytes == null) {
+                _runBytes = new byte[RUN_BUFFER];
+            }
+            byte[] bytes = _runBytes;
+            for (int i = start; i < end; i += RUN_BUFFER) {
+                int n = Math.min(end - i, RUN_BUFFER);
+                buffer.get(i, bytes, 0, n);
+                convert(bytes, 0, n, bytes, 0);
+                buffer.put(i, bytes, 0, n);
             }
         }
-        return convertedString;
+        buffer.position(end);
+        return end - start;
+    }
+
+    /** Return the conversion of the single byte B, which is copied
+     *  unchanged if its character is not in my alphabet. */
+    private byte convertByte(byte b) {
+        int index = _alphabet.index((char) (b & BYTE_MASK));
+        if (index >= 0) {
+            return (byte) _alphabet.toChar(convert(index));
+        }
+        return b;
+    }
+
+    /** Return my scratch space for bulk conversions, of RUN_BUFFER
+     *  entries. */
+    private int[] runText() {
+        if (_runText == null) {
+            _runText = new int[RUN_BUFFER];
+        }
+        return _runText;
+    }
+
+    /** Check that the characters of my alphabet can be held in bytes. */
+    private void checkSingleByte() {
+        if (!_alphabet.isSingleByte()) {
+            throw error("alphabet does not fit in bytes");
+        }
+    }
+
+    /** Return the conversion of the single character C, which is copied
+     *  unchanged if it is not in my alphabet. */
+    private char convertChar(char c) {
+        int index = _alphabet.index(c);
+        if (index >= 0) {
+            return _alphabet.toChar(convert(index));
+        }
+        return c;
     }
 
     /** Common alphabet of my rotors. */
@@ -275,9 +1064,75 @@ class Machine {
     private int _pawls;
     /** Collection of all possible rotors. */
     private Collection<Rotor> _allPossibleRotors;
+    /** The rotors of _allPossibleRotors, indexed by their IDs. */
+    private final Rotor[] _rotors;
+    /** The ID of each rotor in _rotors, by name. */
+    private final HashMap<String, Integer> _rotorIds;
+    /** The IDs of the rotors in _storeRotors, or null if not known. */
+    private int[] _slotIds;
 
     /** Rotor array of stored rotors. */
     protected Rotor[] _storeRotors;
+    /** The settings of the rotors in _storeRotors. */
+    private int[] _positions;
+    /** The ring settings of the rotors in _storeRotors. */
+    private int[] _rings;
+    /** The forward and inverse wiring tables of the rotor in each slot,
+     *  with its ring setting folded in (see wire). */
+    private int[][] _forwardTables, _inverseTables;
+    /** The kind of the rotor in each slot. */
+    private RotorKind[] _kinds;
+    /** The notches of the rotor in each slot, as by Rotor.notchBits. */
+    private long[][] _notches;
+    /** 1 for each slot whose rotor and left neighbour both move (so that
+     *  the rotor may push its neighbour), and 0 for the others. */
+    private int[] _pawlPairs;
+    /** Notches of an empty slot. */
+    private static final long[] NO_NOTCHES = new long[1];
+    /** Log base 2 of the number of bits in a long. */
+    private static final int LOG_LONG_BITS = 6;
     /** A new plugboard to set. */
     private Permutation _plugboard;
+
+    /** Shift that turns a negative int into -1 and any other into 0. */
+    private static final int SIGN = 31;
+    /** Mask converting a signed byte to its unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+    /** Largest number of entries in each of _entry and _exit. */
+    static final int EDGE_TABLE_LIMIT = 1 << 16;
+    /** Number of characters converted together by the bulk conversion
+     *  methods. */
+    private static final int RUN_BUFFER = 4096;
+    /** Converts the runs of keypresses in convert(int[], int, int). */
+    static final RunConverter RUNS = loadRunConverter();
+    /** Scratch space for the bulk conversion methods, or null. */
+    private int[] _runText;
+    /** Bytes copied out of a direct buffer by convert(ByteBuffer), or
+     *  null. */
+    private byte[] _runBytes;
+    /** Composition of the rotors left of the rightmost one, the
+     *  reflector, and their inverses, at the current settings. */
+    private int[] _inner;
+    /** _layers[I] is the composition of my rotors 1 .. I, forwards,
+     *  the reflector, and the same rotors backwards, at the settings
+     *  _layerSettings, or null if not yet built. */
+    private int[][] _layers;
+    /** The rotors from which each of _layers was built. */
+    private Rotor[] _layerRotors;
+    /** The settings of _layerRotors from which each of _layers was
+     *  built. */
+    private int[] _layerSettings;
+    /** True iff _inner reflects the current rotor settings. */
+    private boolean _innerValid;
+    /** _entry[S * alphabet size + X] is the plugboard followed by the
+     *  rightmost rotor at setting S applied to X, or null if not
+     *  tabulated. */
+    private int[] _entry;
+    /** _exit[S * alphabet size + X] is the inverse of the rightmost
+     *  rotor at setting S followed by the plugboard applied to X, or
+     *  null if not tabulated. */
+    private int[] _exit;
+    /** True iff _entry and _exit reflect the current plugboard and
+     *  rotors. */
+    private boolean _edgesValid;
 }
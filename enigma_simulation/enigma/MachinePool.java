@@ -0,0 +1,64 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A parsed configuration together with a pool of machines built from
+ *  it.  Machines are handed out in their initial state (no rotors
+ *  inserted) and returned after use, so that jobs sharing a
+ *  configuration skip both parsing and machine construction.  A pool
+ *  may be used from several threads at once.
+ *  @author Razi Mahmood
+ */
+class MachinePool {
+
+    /** A pool for the configuration whose text is CONFIG. */
+    MachinePool(String config) {
+        _parser = new Main(new Scanner(config));
+        _prototype = _parser.readConfig();
+    }
+
+    /** Return a machine from the pool, or a new one if the pool is
+     *  empty.  The machine must be returned with release. */
+    Machine acquire() {
+        Machine machine = _idle.pollFirst();
+        if (machine == null) {
+            _created.incrementAndGet();
+            machine = _prototype.copy();
+        }
+        return machine;
+    }
+
+    /** Reset MACHINE, which must have come from acquire, and return it
+     *  to the pool. */
+    void release(Machine machine) {
+        machine.reset();
+        _idle.addFirst(machine);
+    }
+
+    /** Return a Main that processes INPUT to OUTPUT, whose characters
+     *  are encoded with CHARSET, interpreting settings lines according
+     *  to my configuration. */
+    Main session(Scanner input, PrintStream output, Charset charset) {
+        return new Main(_parser, input, output, charset);
+    }
+
+    /** Return the number of machines this pool has constructed. */
+    int created() {
+        return _created.get();
+    }
+
+    /** Parser holding the rotor names and alphabet of my
+     *  configuration. */
+    private final Main _parser;
+    /** Machine copied to make new pool members; never handed out. */
+    private final Machine _prototype;
+    /** Machines available for reuse. */
+    private final ConcurrentLinkedDeque<Machine> _idle =
+        new ConcurrentLinkedDeque<Machine>();
+    /** Number of machines constructed. */
+    private final AtomicInteger _created = new AtomicInteger();
+}
@@ -0,0 +1,279 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for looking up and inserting the
+ *  rotors of a Machine.
+ *  @author Razi Mahmood
+ */
+public class MachineRotorsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Message converted in these tests. */
+    private static final String MSG = "FROM HIS SHOULDER HIAWATHA";
+
+    @Test
+    public void checkRotorIds() {
+        Machine machine = navalMachine("* B Beta III IV I AXLE");
+        assertEquals(NAVALA.size(), machine.numAvailableRotors());
+        assertEquals(-1, machine.rotorId("IX"));
+        assertNull(machine.extractRotor("IX"));
+        for (String name : NAVALA.keySet()) {
+            int id = machine.rotorId(name);
+            assertTrue(id >= 0 && id < machine.numAvailableRotors());
+            assertEquals(name, machine.rotor(id).name());
+            assertSame(machine.rotor(id), machine.extractRotor(name));
+        }
+        int[] ids = machine.rotorIds(new String[] { "C", "Gamma", "I" });
+        assertEquals("Gamma", machine.rotor(ids[1]).name());
+        try {
+            machine.rotorIds(new String[] { "B", "IX" });
+            fail();
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkInsertById() {
+        String[] names = { "B", "Beta", "III", "IV", "I" };
+        Machine byName = navalMachine("* C Gamma I II III AAAA");
+        Machine byId = navalMachine("* C Gamma I II III AAAA");
+        byName.insertRotors(names);
+        byName.setRotors("AXLE");
+        byId.insertRotors(byId.rotorIds(names));
+        byId.setRotors("AXLE");
+        assertEquals(byName.convert(MSG), byId.convert(MSG));
+        assertEquals(navalMachine("* B Beta III IV I AXLE").convert(MSG),
+                     navalMachine("* B Beta III IV I AXLE")
+                     .copy().convert(MSG));
+
+        names = new String[] { "B", "Beta", "V", "IV", "I" };
+        byName.insertRotors(names);
+        byName.setRotors("AXLE");
+        byId.insertRotors(byId.rotorIds(names));
+        byId.setRotors("AXLE");
+        assertEquals(byName.convert(MSG), byId.convert(MSG));
+
+        Machine copy = byId.copy();
+        assertSame(byId.extractRotor("V"), copy.extractRotor("V"));
+        assertEquals(byId.convert(MSG), copy.convert(MSG));
+    }
+
+    @Test
+    public void checkInsertByIdErrors() {
+        Machine machine = navalMachine("* B Beta III IV I AXLE");
+        int[][] bad = {
+            machine.rotorIds(new String[] { "Beta", "B", "III", "IV", "I" }),
+            machine.rotorIds(new String[] { "B", "Beta", "C", "IV", "I" }),
+            machine.rotorIds(new String[] { "B", "Beta", "III", "IV",
+                                            "Gamma" }),
+            { 0, 1, 2, 3, 4, 5 },
+            { machine.rotorId("B"), -1 },
+            { machine.rotorId("B"), NAVALA.size() },
+        };
+        for (int[] ids : bad) {
+            try {
+                machine.insertRotors(ids);
+                fail();
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void checkSharedRotors() throws InterruptedException {
+        Machine prototype = navalMachine("* B Beta III IV I AXLE (HQ)");
+        String text = MSG + MSG + MSG + MSG + MSG + MSG + MSG + MSG;
+        String expected = prototype.copy().convert(text);
+        Machine[] machines = new Machine[4];
+        String[] results = new String[machines.length];
+        Thread[] threads = new Thread[machines.length];
+        for (int k = 0; k < machines.length; k++) {
+            machines[k] = prototype.copy();
+            final int j = k;
+            threads[k] = new Thread(() -> {
+                StringBuilder result = new StringBuilder();
+                for (int i = 0; i < text.length(); i++) {
+                    result.append(machines[j].convert(text.substring(i,
+                                                                     i + 1)));
+                }
+                results[j] = result.toString();
+            });
+            threads[k].start();
+        }
+        for (int k = 0; k < machines.length; k++) {
+            threads[k].join();
+            assertEquals(expected, results[k]);
+            assertSame(prototype.extractRotor("IV"),
+                       machines[k].extractRotor("IV"));
+        }
+        assertEquals(0, prototype.extractRotor("I").setting());
+        assertEquals(expected, prototype.convert(text));
+    }
+
+    /** Advance ROTORS, standalone rotors holding their own settings in
+     *  the slots of a machine, for one keypress as machines always
+     *  have: the rightmost rotor moves, and a rotor at a notch with
+     *  pawls on it and its left neighbour pushes both, unless it was
+     *  itself just pushed. */
+    private static void referenceStep(Rotor[] rotors) {
+        boolean[] advanced = new boolean[rotors.length];
+        int last = rotors.length - 1;
+        for (int i = last; i > 0; i--) {
+            boolean pawls = rotors[i].rotates() && rotors[i - 1].rotates();
+            if (i == last && rotors[i].rotates()) {
+                if (pawls && rotors[i].atNotch()) {
+                    rotors[i - 1].advance();
+                    advanced[i - 1] = true;
+                }
+                rotors[i].advance();
+            } else if (!advanced[i] && pawls && rotors[i].atNotch()) {
+                rotors[i].advance();
+                rotors[i - 1].advance();
+                advanced[i - 1] = true;
+            }
+        }
+    }
+
+    @Test
+    public void checkStepping() {
+        String[][] orders = {
+            { "B", "Beta", "III", "IV", "I" },
+            { "C", "V", "VI", "VII", "VIII" },
+            { "B", "Gamma", "Beta", "II", "IV" },
+            { "B", "Beta", "VI", "Gamma", "VII" },
+        };
+        int[] pawls = { 3, 4, 2, 3 };
+        Random random = new Random(4);
+        for (int k = 0; k < orders.length; k++) {
+            for (int trial = 0; trial < 20; trial++) {
+                StringBuilder setting = new StringBuilder();
+                for (int i = 1; i < orders[k].length; i++) {
+                    setting.append(UPPER_STRING.charAt(random.nextInt(26)));
+                }
+                Machine machine =
+                    navalMachine(5, pawls[k], "* " + String.join(" ",
+                                                                orders[k])
+                                 + " " + setting);
+                Rotor[] rotors = new Rotor[orders[k].length];
+                for (int i = 0; i < rotors.length; i++) {
+                    rotors[i] = machine.extractRotor(orders[k][i]).copy();
+                    if (i > 0) {
+                        rotors[i].set(setting.charAt(i - 1));
+                    }
+                }
+                for (int step = 0; step < 2000; step++) {
+                    int[] before = machine.rotorSettings();
+                    referenceStep(rotors);
+                    boolean slowMoved = machine.step();
+                    int[] after = machine.rotorSettings();
+                    for (int i = 1; i < rotors.length; i++) {
+                        assertEquals(rotors[i].setting(), after[i]);
+                    }
+                    assertEquals(slowMoved,
+                                 !Arrays.equals(Arrays.copyOf(before, 4),
+                                                Arrays.copyOf(after, 4)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkRings() {
+        assertEquals("BDZGO",
+                     navalMachine("* B Beta I II III AAAA").convert("AAAAA"));
+        assertEquals("BDZGO", navalMachine("* B Beta I II III AAAA AAAA")
+                     .convert("AAAAA"));
+        Machine machine = navalMachine("* B Beta I II III AAAA ABBB (QW)");
+        assertArrayEquals(new int[] { 0, 0, 1, 1, 1 },
+                          machine.ringSettings());
+        assertEquals("EWTYX",
+                     navalMachine("* B Beta I II III AAAA ABBB")
+                     .convert("AAAAA"));
+        assertEquals(navalMachine("* B Beta I II III AAAA ABBB (QW)")
+                     .convert(MSG),
+                     machine.copy().convert(MSG));
+        machine.insertRotors(new String[] { "B", "Beta", "I", "II", "III" });
+        assertArrayEquals(new int[5], machine.ringSettings());
+        try {
+            machine.setRings("AB");
+            fail("ring length not checked");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkRingsReinserted() {
+        Machine machine = navalMachine("* B Beta III IV I AAAA QRST");
+        machine.convert("ABC");
+        machine.insertRotors(machine.slotIds());
+        assertArrayEquals(new int[5], machine.ringSettings());
+        machine.setRotors("AAAA");
+        assertEquals(navalMachine("* B Beta III IV I AAAA").convert(MSG),
+                     machine.convert(MSG));
+        machine = navalMachine("* B Beta III IV I AAAA AAAQ (AB)");
+        machine.convert("ABC");
+        machine.insertRotors(machine.slotIds());
+        machine.setRotors("AAAA");
+        assertEquals(navalMachine("* B Beta III IV I AAAA (AB)")
+                     .convert(MSG), machine.convert(MSG));
+    }
+
+    @Test
+    public void checkRingsFolded() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 50; trial++) {
+            char[] rings = new char[4];
+            char[] settings = new char[4];
+            for (int i = 0; i < 4; i++) {
+                rings[i] = (char) ('A' + random.nextInt(26));
+                settings[i] = (char) ('A' + random.nextInt(26));
+            }
+            Machine machine = navalMachine("* B Beta I II III AAAA");
+            machine.setRotors(new String(settings));
+            machine.setRings(new String(rings));
+            for (int k = 0; k < 200; k++) {
+                int c = random.nextInt(26);
+                int[] positions = machine.rotorSettings();
+                int expected = reference(machine, positions,
+                                         machine.ringSettings(), c);
+                assertEquals(expected, machine.substitute(c));
+                machine.step();
+            }
+        }
+    }
+
+    /** Return the conversion of C by MACHINE's rotors, without its
+     *  plugboard, at POSITIONS with ring settings RINGS, computed rotor
+     *  by rotor with the ring offsets applied directly. */
+    private static int reference(Machine machine, int[] positions,
+                                 int[] rings, int c) {
+        String[] names = { "B", "Beta", "I", "II", "III" };
+        int x = c;
+        for (int i = names.length - 1; i >= 0; i--) {
+            Rotor rotor = machine.extractRotor(names[i]);
+            x = rotor.convertForward(x, Math.floorMod(positions[i]
+                                                      - rings[i], 26));
+        }
+        for (int i = 1; i < names.length; i++) {
+            Rotor rotor = machine.extractRotor(names[i]);
+            x = rotor.convertBackward(x, Math.floorMod(positions[i]
+                                                       - rings[i], 26));
+        }
+        return x;
+    }
+}
@@ -0,0 +1,217 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import static enigma.EnigmaException.*;
+
+/** The state of a Machine part way through a stream, from which
+ *  conversion can be resumed: the rotors in its slots, their positions
+ *  and ring settings, its plugboard, and the numbers of input bytes
+ *  read and output bytes written.  A snapshot is stored compactly in
+ *  binary (a few hundred bytes even for the byte alphabet), with a
+ *  fingerprint of the machine's configuration, so that it is not
+ *  restored into a machine with different rotors, and a checksum.
+ *  Snapshots are saved by writing a temporary file and renaming it, so
+ *  that an interrupted save leaves the previous snapshot intact.
+ *  @author Razi Mahmood
+ */
+class MachineSnapshot {
+
+    /** A snapshot of MACHINE, after reading INPUTOFFSET bytes and
+     *  writing OUTPUTOFFSET bytes. */
+    MachineSnapshot(Machine machine, long inputOffset, long outputOffset) {
+        _slotIds = machine.slotIds();
+        if (_slotIds == null) {
+            throw error("machine has no rotors to snapshot");
+        }
+        _fingerprint = fingerprint(machine);
+        _positions = machine.rotorSettings();
+        _rings = machine.ringSettings();
+        _plugboard = machine.plugboard().forwardTable().clone();
+        _inputOffset = inputOffset;
+        _outputOffset = outputOffset;
+    }
+
+    /** A snapshot read from DATA, as produced by toBytes(). */
+    MachineSnapshot(ByteBuffer data) {
+        try {
+            CRC32 crc = new CRC32();
+            ByteBuffer body = data.duplicate();
+            body.limit(data.limit() - Integer.BYTES);
+            crc.update(body);
+            if ((int) crc.getValue() != data.getInt(data.limit()
+                                                    - Integer.BYTES)) {
+                throw error("corrupt snapshot");
+            }
+            if (data.getInt() != MAGIC || data.get() != VERSION) {
+                throw error("not a machine snapshot");
+            }
+            _fingerprint = data.getInt();
+            int slots = data.getInt();
+            if (slots < 0 || slots > data.remaining()) {
+                throw error("corrupt snapshot");
+            }
+            _slotIds = new int[slots];
+            _positions = new int[slots];
+            _rings = new int[slots];
+            for (int i = 0; i < slots; i++) {
+                _slotIds[i] = data.getInt();
+                _positions[i] = data.getInt();
+                _rings[i] = data.getInt();
+            }
+            int size = data.getInt();
+            if (size < 0 || size > data.remaining()) {
+                throw error("corrupt snapshot");
+            }
+            _plugboard = new int[size];
+            for (int x = 0; x < size; x++) {
+                _plugboard[x] = data.getChar();
+            }
+            _inputOffset = data.getLong();
+            _outputOffset = data.getLong();
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | IndexOutOfBoundsException excp) {
+            throw error("corrupt snapshot");
+        }
+    }
+
+    /** Return my encoding as bytes. */
+    ByteBuffer toBytes() {
+        int length = Integer.BYTES + 1 + 3 * Integer.BYTES
+            + 3 * Integer.BYTES * _slotIds.length
+            + Character.BYTES * _plugboard.length + 2 * Long.BYTES
+            + Integer.BYTES;
+        ByteBuffer data = ByteBuffer.allocate(length);
+        data.putInt(MAGIC).put(VERSION).putInt(_fingerprint);
+        data.putInt(_slotIds.length);
+        for (int i = 0; i < _slotIds.length; i++) {
+            data.putInt(_slotIds[i]).putInt(_positions[i]).putInt(_rings[i]);
+        }
+        data.putInt(_plugboard.length);
+        for (int x : _plugboard) {
+            data.putChar((char) x);
+        }
+        data.putLong(_inputOffset).putLong(_outputOffset);
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, data.position());
+        data.putInt((int) crc.getValue());
+        data.flip();
+        return data;
+    }
+
+    /** Save me in the file FILE, replacing it atomically. */
+    void save(Path file) {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temporary, WRITE,
+                                                    CREATE,
+                                                    TRUNCATE_EXISTING)) {
+                ByteBuffer data = toBytes();
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+                out.force(false);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not save snapshot %s: %s", file,
+                        excp.getMessage());
+        }
+    }
+
+    /** Return the snapshot saved in FILE, or null if there is no such
+     *  file. */
+    static MachineSnapshot load(Path file) {
+        try {
+            return new MachineSnapshot(ByteBuffer.wrap(Files.readAllBytes(
+                file)));
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw error("could not read snapshot %s: %s", file,
+                        excp.getMessage());
+        }
+    }
+
+    /** Put MACHINE, which must have the configuration of the machine I
+     *  was taken from, into my state. */
+    void restore(Machine machine) {
+        if (fingerprint(machine) != _fingerprint) {
+            throw error("snapshot is of a differently configured machine");
+        }
+        machine.insertRotors(_slotIds);
+        machine.restoreSettings(_positions);
+        machine.setRings(_rings);
+        machine.setPlugboard(new Permutation(_plugboard,
+                                             machine.alphabet()));
+    }
+
+    /** Return the number of input bytes read when I was taken. */
+    long inputOffset() {
+        return _inputOffset;
+    }
+
+    /** Return the number of output bytes written when I was taken. */
+    long outputOffset() {
+        return _outputOffset;
+    }
+
+    /** Return a hash of the configuration of MACHINE: its alphabet, its
+     *  number of slots and pawls, and the names, kinds, wirings, and
+     *  notches of its available rotors, in order. */
+    static int fingerprint(Machine machine) {
+        Alphabet alphabet = machine.alphabet();
+        int hash = alphabet.size();
+        for (int x = 0; x < alphabet.size(); x++) {
+            hash = HASH_MULTIPLIER * hash + alphabet.toChar(x);
+        }
+        hash = HASH_MULTIPLIER * hash + machine.numRotors();
+        hash = HASH_MULTIPLIER * hash + machine.numPawls();
+        for (int id = 0; id < machine.numAvailableRotors(); id++) {
+            Rotor rotor = machine.rotor(id);
+            hash = HASH_MULTIPLIER * hash + rotor.name().hashCode();
+            hash = HASH_MULTIPLIER * hash + rotor.kind().ordinal();
+            hash = HASH_MULTIPLIER * hash
+                + Arrays.hashCode(rotor.permutation().forwardTable());
+            hash = HASH_MULTIPLIER * hash
+                + Arrays.hashCode(rotor.notchBits());
+        }
+        return hash;
+    }
+
+    /** First bytes of every snapshot: "ENGS". */
+    private static final int MAGIC = 0x454e4753;
+    /** Version of the snapshot format. */
+    private static final byte VERSION = 1;
+    /** Multiplier used in combining hashes. */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /** Fingerprint of the machine's configuration. */
+    private final int _fingerprint;
+    /** The IDs of the rotors in the machine's slots. */
+    private final int[] _slotIds;
+    /** The positions of those rotors. */
+    private final int[] _positions;
+    /** The ring settings of those rotors. */
+    private final int[] _rings;
+    /** The forward table of the plugboard. */
+    private final int[] _plugboard;
+    /** Number of bytes read. */
+    private final long _inputOffset;
+    /** Number of bytes written. */
+    private final long _outputOffset;
+}
@@ -0,0 +1,158 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.ByteStreamConverterTest.byteMachine;
+
+/** The suite of all JUnit tests for the MachineSnapshot class and for
+ *  resuming conversions from snapshots.
+ *  @author Razi Mahmood
+ */
+public class MachineSnapshotTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return LENGTH bytes drawn from SEED. */
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /** Return the conversion of DATA by MACHINE. */
+    private static byte[] converted(Machine machine, byte[] data) {
+        byte[] out = new byte[data.length];
+        machine.convert(data, 0, data.length, out, 0);
+        return out;
+    }
+
+    @Test
+    public void checkRoundTrip() {
+        Machine machine = byteMachine(1);
+        machine.setRings(new int[] { 0, 7, 0, 255 });
+        converted(machine, randomBytes(1000, 2));
+        MachineSnapshot snapshot = new MachineSnapshot(machine, 1000, 999);
+        MachineSnapshot read = new MachineSnapshot(snapshot.toBytes());
+        assertEquals(1000, read.inputOffset());
+        assertEquals(999, read.outputOffset());
+
+        Machine restored = byteMachine(1);
+        restored.insertRotors(new String[] { "R", "C", "B", "A" });
+        read.restore(restored);
+        assertArrayEquals(machine.rotorSettings(), restored.rotorSettings());
+        assertArrayEquals(machine.ringSettings(), restored.ringSettings());
+        assertArrayEquals(machine.slotIds(), restored.slotIds());
+        byte[] rest = randomBytes(5000, 3);
+        assertArrayEquals(converted(machine, rest),
+                          converted(restored, rest));
+    }
+
+    @Test
+    public void checkRejected() {
+        Machine machine = byteMachine(1);
+        ByteBuffer data = new MachineSnapshot(machine, 0, 0).toBytes();
+        byte[] bytes = Arrays.copyOf(data.array(), data.limit());
+        for (int i : new int[] { 0, 5, 20, bytes.length - 1 }) {
+            byte[] corrupt = bytes.clone();
+            corrupt[i] ^= 1;
+            try {
+                new MachineSnapshot(ByteBuffer.wrap(corrupt));
+                fail("corrupt snapshot accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        try {
+            new MachineSnapshot(ByteBuffer.wrap(bytes, 0, 10));
+            fail("truncated snapshot accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        MachineSnapshot snapshot = new MachineSnapshot(ByteBuffer.wrap(bytes));
+        try {
+            snapshot.restore(byteMachine(2));
+            fail("snapshot restored into a different machine");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkResume() throws IOException {
+        byte[] data = randomBytes(100000, 4);
+        byte[] expected = converted(byteMachine(1), data);
+        int cut = 37000;
+        Path dir = Files.createTempDirectory("snapshot");
+        Path input = dir.resolve("in");
+        Path output = dir.resolve("out");
+        Path checkpoint = dir.resolve("state");
+        try {
+            Files.write(input, Arrays.copyOf(data, cut));
+            ByteStreamConverter first =
+                new ByteStreamConverter(byteMachine(1), 1000);
+            first.setCheckpoint(checkpoint, 4096, false);
+            assertEquals(cut, first.process(input.toString(),
+                                            output.toString()));
+            MachineSnapshot saved = MachineSnapshot.load(checkpoint);
+            assertEquals(cut, saved.inputOffset());
+            assertEquals(cut, saved.outputOffset());
+
+            Files.write(input, Arrays.copyOfRange(data, cut, data.length),
+                        StandardOpenOption.APPEND);
+            Files.write(output, randomBytes(500, 5),
+                        StandardOpenOption.APPEND);
+            Machine machine = byteMachine(1);
+            machine.insertRotors(new String[] { "R", "C", "B", "A" });
+            ByteStreamConverter second =
+                new ByteStreamConverter(machine, 1000);
+            second.setCheckpoint(checkpoint, 4096, true);
+            assertEquals(data.length - cut,
+                         second.process(input.toString(),
+                                        output.toString()));
+            assertArrayEquals(expected, Files.readAllBytes(output));
+            assertEquals(data.length,
+                         MachineSnapshot.load(checkpoint).inputOffset());
+        } finally {
+            for (File file : dir.toFile().listFiles()) {
+                file.delete();
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void checkResumeWithoutSnapshot() throws IOException {
+        byte[] data = randomBytes(20000, 6);
+        Path dir = Files.createTempDirectory("snapshot");
+        Path input = dir.resolve("in");
+        Path output = dir.resolve("out");
+        try {
+            Files.write(input, data);
+            ByteStreamConverter converter =
+                new ByteStreamConverter(byteMachine(1), 1000);
+            converter.setCheckpoint(dir.resolve("state"), 4096, true);
+            converter.process(input.toString(), output.toString());
+            assertArrayEquals(converted(byteMachine(1), data),
+                              Files.readAllBytes(output));
+        } finally {
+            for (File file : dir.toFile().listFiles()) {
+                file.delete();
+            }
+            Files.delete(dir);
+        }
+    }
+}
@@ -3,14 +3,26 @@ package enigma;
 import static enigma.EnigmaException.error;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.NoSuchElementException;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * Enigma simulator.
@@ -28,6 +40,64 @@ public final class Main {
      * file for processed messages. Otherwise, output goes to the
      * standard output. Exits normally if there are no errors in the input;
      * otherwise with code 1.
+     *
+     * The file names may be preceded by options:
+     *   --mmap  Memory-map the input and output files (both must be
+     *           given) and convert them as single-byte text in large
+     *           blocks, rather than reading lines with a Scanner.
+     *   --batch[=PORT]  Take no file names; instead serve a stream of
+     *           jobs, each carrying its own configuration and input
+     *           (see BatchService), from the standard input or, if PORT
+     *           is given, from connections to that port on the local
+     *           host.
+     *   --crib=TEXT  Treat the input as ciphertext (settings lines are
+     *           ignored), and search every rotor order and starting
+     *           position for settings consistent with TEXT being part
+     *           of the plaintext (see CribSearch), writing a settings
+     *           line for each stop found.  Progress is reported on the
+     *           standard error.
+     *   --crib-offset=N  With --crib, the crib lies N characters into
+     *           the ciphertext.  By default, every offset at which the
+     *           crib does not contradict the ciphertext is tried.
+     *   --attack[=CORPUS]  Treat the input as ciphertext, and search
+     *           every rotor order, starting position, and plugboard for
+     *           the settings whose decryptions look most like language
+     *           (see CiphertextAttack), writing settings lines for the
+     *           best candidates, best first.  Plugboards are scored by
+     *           index of coincidence and, if the file CORPUS is given,
+     *           by the likelihood of trigrams counted in it.
+     *   --bytes=SETTINGS  Convert the input as binary data, byte by
+     *           byte, with a machine over all 256 byte values, writing
+     *           the result without grouping.  If the input and output
+     *           files are the same, it is converted in place.  The
+     *           configuration's alphabet line must be BYTES, and in it
+     *           and in SETTINGS (a settings line, such as "* B I II
+     *           00ff (0a0b)") each character of a notch, a rotor
+     *           setting, a ring setting, or a cycle is written as two
+     *           hexadecimal digits.
+     *   --checkpoint=FILE  With --bytes and an output file, save the
+     *           state of the machine and the offsets reached in FILE
+     *           (see MachineSnapshot) every few megabytes and on
+     *           finishing.
+     *   --resume  With --checkpoint, continue the conversion from the
+     *           snapshot in FILE, if there is one, rather than from the
+     *           start.  The input and output files must be named.
+     *   --independent[=THREADS]  Convert the messages following each
+     *           settings line independently of all others (as each
+     *           settings line resets the machine), on THREADS threads
+     *           (by default, one per processor), writing the results
+     *           in order (see MessageBlockProcessor).
+     *   --stream  Read the input in chunks of a fixed size rather than
+     *           line by line (see StreamFilter), so that memory use does
+     *           not grow with the length of message lines.  The output
+     *           is the same.
+     *   --metrics[=SECONDS]  Record the characters converted per
+     *           second, the time taken to read the configuration and to
+     *           write output, and the number of rotor steps (see
+     *           Metrics), publishing them as the JMX MBean
+     *           enigma:type=Metrics and writing a summary to the
+     *           standard error every SECONDS seconds (default 10; 0 for
+     *           never) and on finishing.
      */
     public static void main(String... args) {
         try {
@@ -41,11 +111,42 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int first = readOptions(args);
+        args = Arrays.copyOfRange(args, first, args.length);
+        if (_options.containsKey(BATCH_OPTION)) {
+            if (args.length != 0) {
+                throw error("%s takes no file names", BATCH_OPTION);
+            }
+            return;
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
         _config = getInput(args[0]);
 
+        if (_options.containsKey(MMAP_OPTION)) {
+            if (args.length != 3) {
+                throw error("%s requires input and output files",
+                            MMAP_OPTION);
+            }
+            _inputName = args[1];
+            _outputName = args[2];
+            return;
+        }
+        if (_options.containsKey(RESUME_OPTION)
+            && !_options.containsKey(CHECKPOINT_OPTION)) {
+            throw error("%s requires %s", RESUME_OPTION, CHECKPOINT_OPTION);
+        }
+        if (_options.containsKey(CHECKPOINT_OPTION)
+            && !_options.containsKey(BYTES_OPTION)) {
+            throw error("%s requires %s", CHECKPOINT_OPTION, BYTES_OPTION);
+        }
+        if (_options.containsKey(BYTES_OPTION)
+            || _options.containsKey(STREAM_OPTION)) {
+            _inputName = args.length > 1 ? args[1] : null;
+            _outputName = args.length > 2 ? args[2] : null;
+            return;
+        }
         if (args.length > 1) {
             _input = getInput(args[1]);
         } else {
@@ -56,6 +157,45 @@ public final class Main {
         } else {
             _output = System.out;
         }
+        _concurrent = true;
+    }
+
+    /** A Main that reads a configuration from CONFIG and does no other
+     *  I/O, for parsing configurations outside of main. */
+    Main(Scanner config) {
+        _config = config;
+    }
+
+    /** A Main that processes INPUT to OUTPUT, whose characters are
+     *  encoded with CHARSET, with machines built from the configuration
+     *  already read by PARSED. */
+    Main(Main parsed, Scanner input, PrintStream output, Charset charset) {
+        _alphabet = parsed._alphabet;
+        rotorTypeMap = parsed.rotorTypeMap;
+        _input = input;
+        _output = output;
+        _charset = charset;
+    }
+
+    /** Record the leading options of ARGS in _options, returning the
+     *  index of the first argument that is not an option.  An option
+     *  is either --NAME or --NAME=VALUE. */
+    private int readOptions(String[] args) {
+        int i;
+        for (i = 0; i < args.length && args[i].startsWith("--"); i++) {
+            String name = args[i];
+            String value = null;
+            int equals = name.indexOf('=');
+            if (equals >= 0) {
+                value = name.substring(equals + 1);
+                name = name.substring(0, equals);
+            }
+            if (!KNOWN_OPTIONS.contains(name)) {
+                throw error("unknown option: %s", args[i]);
+            }
+            _options.put(name, value);
+        }
+        return i;
     }
 
     /** Return a Scanner reading from the file named NAME. */
@@ -81,12 +221,320 @@ public final class Main {
      * file _config and apply it to the messages in _input, sending the
      * results to _output.
      */
-    private void process() {
+    void process() {
+        if (!_options.containsKey(METRICS_OPTION)) {
+            dispatch();
+            return;
+        }
+        Metrics.enable(metricsPeriod(), System.err);
+        long started = Metrics.start();
+        try {
+            dispatch();
+        } finally {
+            Metrics.processed(started);
+            Metrics.disable();
+        }
+    }
+
+    /** Return the period between metrics summaries, in milliseconds, as
+     *  given by METRICS_OPTION. */
+    private long metricsPeriod() {
+        String value = _options.get(METRICS_OPTION);
+        if (value == null) {
+            return DEFAULT_METRICS_PERIOD;
+        }
+        try {
+            double seconds = Double.parseDouble(value);
+            if (!(seconds >= 0)) {
+                throw new NumberFormatException();
+            }
+            return Math.round(seconds * MILLIS_PER_SECOND);
+        } catch (NumberFormatException excp) {
+            throw error("bad metrics period: %s", value);
+        }
+    }
 
+    /** Return the number of threads given by INDEPENDENT_OPTION. */
+    private int independentThreads() {
+        String value = _options.get(INDEPENDENT_OPTION);
+        if (value == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            int threads = Integer.parseInt(value);
+            if (threads < 1) {
+                throw new NumberFormatException();
+            }
+            return threads;
+        } catch (NumberFormatException excp) {
+            throw error("bad number of threads: %s", value);
+        }
+    }
+
+    /** Return the snapshot file given by CHECKPOINT_OPTION. */
+    private String checkpointFile() {
+        String value = _options.get(CHECKPOINT_OPTION);
+        if (value == null || value.isEmpty()) {
+            throw error("%s requires a file name", CHECKPOINT_OPTION);
+        }
+        return value;
+    }
+
+    /** Do the work of process(), as selected by my options. */
+    private void dispatch() {
+        if (_options.containsKey(BATCH_OPTION)) {
+            BatchService service = new BatchService();
+            String port = _options.get(BATCH_OPTION);
+            if (port == null) {
+                service.serve(System.in, System.out);
+            } else {
+                try {
+                    service.listen(Integer.parseInt(port));
+                } catch (NumberFormatException excp) {
+                    throw error("bad port number: %s", port);
+                }
+            }
+            return;
+        }
         Machine mymachine = readConfig();
-        processInput(mymachine);
+        if (_options.containsKey(MMAP_OPTION)) {
+            new MappedFileProcessor(this, mymachine)
+                .process(_inputName, _outputName);
+            return;
+        }
+        if (_options.containsKey(BYTES_OPTION)) {
+            setUpBytes(mymachine, _options.get(BYTES_OPTION));
+            ByteStreamConverter converter = new ByteStreamConverter(mymachine);
+            if (_options.containsKey(CHECKPOINT_OPTION)) {
+                converter.setCheckpoint(Paths.get(checkpointFile()),
+                                        ByteStreamConverter
+                                        .CHECKPOINT_INTERVAL,
+                                        _options.containsKey(RESUME_OPTION));
+            }
+            converter.process(_inputName, _outputName);
+            return;
+        }
+        if (_options.containsKey(STREAM_OPTION)) {
+            streamInput(mymachine);
+            return;
+        }
+        if (_options.containsKey(CRIB_OPTION)) {
+            searchCrib(mymachine);
+        } else if (_options.containsKey(ATTACK_OPTION)) {
+            attackCiphertext(mymachine);
+        } else if (_options.containsKey(INDEPENDENT_OPTION)) {
+            new MessageBlockProcessor(this, mymachine, independentThreads())
+                .process(_input, _output, _charset);
+        } else {
+            processInput(mymachine);
+        }
 
+        long flushing = Metrics.start();
         _output.close();
+        Metrics.wrote(0, flushing);
+    }
+
+    /** Search for settings of MYMACHINE's rotors under which the
+     *  ciphertext in _input is consistent with the crib given by
+     *  CRIB_OPTION, printing a settings line for each stop. */
+    void searchCrib(Machine mymachine) {
+        String crib = _options.get(CRIB_OPTION);
+        if (crib == null) {
+            throw error("%s requires a value", CRIB_OPTION);
+        }
+        CribSearch search = new CribSearch(mymachine, readCiphertext(), crib);
+        int[] offsets;
+        String offset = _options.get(CRIB_OFFSET_OPTION);
+        if (offset != null) {
+            try {
+                offsets = new int[] { Integer.parseInt(offset) };
+            } catch (NumberFormatException excp) {
+                throw error("bad crib offset: %s", offset);
+            }
+        } else {
+            offsets = search.possibleOffsets();
+        }
+
+        withProgress(search::progress, () -> {
+            for (int n : offsets) {
+                search.search(n, candidate -> {
+                    synchronized (_output) {
+                        _output.println(candidate);
+                        _output.flush();
+                    }
+                });
+            }
+        });
+    }
+
+    /** Attack the ciphertext in _input by statistics alone with
+     *  MYMACHINE's rotors, printing a settings line for each of the best
+     *  ATTACK_RESULTS candidates, best first. */
+    void attackCiphertext(Machine mymachine) {
+        String corpusName = _options.get(ATTACK_OPTION);
+        TextScorer scorer;
+        if (corpusName == null) {
+            scorer = new TextScorer(mymachine.alphabet());
+        } else {
+            StringBuilder corpus = new StringBuilder();
+            Scanner corpusInput = getInput(corpusName);
+            while (corpusInput.hasNextLine()) {
+                corpus.append(corpusInput.nextLine()).append('\n');
+            }
+            scorer = new TextScorer(mymachine.alphabet(), ATTACK_NGRAM_ORDER,
+                                    corpus);
+        }
+        CiphertextAttack attack =
+            new CiphertextAttack(mymachine, readCiphertext(), scorer);
+        withProgress(attack::progress, () -> {
+            for (CiphertextAttack.Result result
+                     : attack.attack(ATTACK_RESULTS)) {
+                _output.println(result);
+            }
+        });
+    }
+
+    /** Return the text of the lines of _input that are not settings
+     *  lines, trimmed and concatenated. */
+    private String readCiphertext() {
+        StringBuilder ciphertext = new StringBuilder();
+        while (_input.hasNextLine()) {
+            String line = _input.nextLine().trim();
+            if (!line.startsWith("*")) {
+                ciphertext.append(line);
+            }
+        }
+        return ciphertext.toString();
+    }
+
+    /** Run SEARCH, printing the line returned by PROGRESS on the
+     *  standard error every PROGRESS_PERIOD milliseconds and at the
+     *  end. */
+    private void withProgress(Supplier<String> progress, Runnable search) {
+        ScheduledExecutorService reporter =
+            Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "search-progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+        reporter.scheduleAtFixedRate(
+            () -> System.err.println(progress.get()),
+            PROGRESS_PERIOD, PROGRESS_PERIOD, TimeUnit.MILLISECONDS);
+        try {
+            search.run();
+        } finally {
+            reporter.shutdownNow();
+        }
+        System.err.println(progress.get());
+    }
+
+    /** Set up MYMACHINE, whose configuration was read in byte mode,
+     *  according to DIRECTIVE, a settings line in which each character of
+     *  the rotor setting and plugboard is written as two hexadecimal
+     *  digits. */
+    void setUpBytes(Machine mymachine, String directive) {
+        if (directive == null) {
+            throw error("%s requires a settings line", BYTES_OPTION);
+        }
+        String[] tokens = directive.trim().split("\\s+");
+        int numRotors = mymachine.numRotors();
+        if (!tokens[0].equals("*") || tokens.length < numRotors + 2) {
+            throw error("Bad directive line");
+        }
+        String[] rotornames = Arrays.copyOfRange(tokens, 1, numRotors + 1);
+        HashSet<String> rotorSet = new HashSet<String>();
+        for (String name : rotornames) {
+            if (rotorTypeMap.get(name) == null) {
+                throw error("Bad rotor name");
+            } else if (!rotorSet.add(name)) {
+                throw error("Duplicate rotor name");
+            }
+        }
+        String setting = readBytes(tokens[numRotors + 1]);
+        if (setting.length() != numRotors - 1) {
+            throw error("Wheel settings wrong length");
+        }
+        int first = numRotors + 2;
+        String rings = null;
+        if (first < tokens.length && !tokens[first].startsWith("(")) {
+            rings = readBytes(tokens[first]);
+            first += 1;
+        }
+        StringBuilder plugboard = new StringBuilder();
+        for (int i = first; i < tokens.length; i++) {
+            plugboard.append(tokens[i]);
+        }
+        mymachine.setPlugboard(new Permutation(
+            readByteCycles(plugboard.toString()), _alphabet));
+        mymachine.insertRotors(rotornames);
+        mymachine.setRotors(setting);
+        mymachine.setRings(rings);
+    }
+
+    /** Return the characters whose codes are written, as pairs of
+     *  hexadecimal digits, in HEX. */
+    String readBytes(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw error("odd number of hexadecimal digits: %s", hex);
+        }
+        char[] result = new char[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (char) readByte(hex, 2 * i);
+        }
+        return new String(result);
+    }
+
+    /** Return the value of the two hexadecimal digits at K in TEXT. */
+    private int readByte(String text, int k) {
+        int high = k < text.length()
+            ? Character.digit(text.charAt(k), HEX_RADIX) : -1;
+        int low = k + 1 < text.length()
+            ? Character.digit(text.charAt(k + 1), HEX_RADIX) : -1;
+        if (high < 0 || low < 0) {
+            throw error("invalid characters");
+        }
+        return high * HEX_RADIX + low;
+    }
+
+    /** Return the mapping of the byte alphabet given by CYCLES, in
+     *  cycle notation with each character written as two hexadecimal
+     *  digits and without whitespace, as in "(0a0b0c)(ff00)". */
+    int[] readByteCycles(String cycles) {
+        int[] mapping = new int[Alphabet.BYTE_VALUES];
+        Arrays.fill(mapping, -1);
+        int k = 0;
+        while (k < cycles.length()) {
+            if (cycles.charAt(k) != '(') {
+                throw error("invalid cycle");
+            }
+            k += 1;
+            int first = -1;
+            int prev = -1;
+            while (k < cycles.length() && cycles.charAt(k) != ')') {
+                int b = readByte(cycles, k);
+                if (mapping[b] >= 0 || b == prev) {
+                    throw error("duplicate letters from alphabet");
+                }
+                if (prev < 0) {
+                    first = b;
+                } else {
+                    mapping[prev] = b;
+                }
+                prev = b;
+                k += 2;
+            }
+            if (k == cycles.length() || prev < 0) {
+                throw error("invalid cycle");
+            }
+            mapping[prev] = first;
+            k += 1;
+        }
+        for (int i = 0; i < mapping.length; i++) {
+            if (mapping[i] < 0) {
+                mapping[i] = i;
+            }
+        }
+        return mapping;
     }
 
     /**Used to get the setting of a rotor from the input file.
@@ -110,6 +558,14 @@ public final class Main {
         }
         return setting;
     }
+    /** Return true iff WORD, following the rotor settings of a settings
+     *  line, gives the ring settings: that is, iff no ring settings
+     *  (RINGS) or PLUGBOARD cycles have been read yet and WORD is not a
+     *  cycle. */
+    private boolean isRingSetting(String word, String rings,
+                                  String plugboard) {
+        return rings == null && plugboard.isEmpty() && !word.startsWith("(");
+    }
     /**Used to add to the plugboard.
            * @param word the line to focus on from the input file
            * @param plugboard the plugboard
@@ -138,6 +594,9 @@ public final class Main {
         return nextword;
     }
     /**Used to process the odd lines taken directly from the input file.
+     * The rotor settings may be followed by the ring settings, written
+     * the same way, as in "* B Beta III IV I AXLE BBBB (HQ) (EX)";
+     * without them, every ring is at the first letter.
      * @param directiveline the input line
      * @param mymachine current Machine
      **/
@@ -147,7 +606,7 @@ public final class Main {
         String  typename, word, firstchar;
         HashSet<String> rotorSet = new HashSet<String>();
         int maxRotors = mymachine.numRotors();
-        String nextword, settings = null;
+        String nextword, settings = null, rings = null;
         String plugboard = "";
         for (int i = 0; i < linetokens.length; i++) {
             word = linetokens[i];
@@ -166,6 +625,8 @@ public final class Main {
                     } else {
                         if (settings == null) {
                             settings = getSetting(word, rotornamelist);
+                        } else if (isRingSetting(word, rings, plugboard)) {
+                            rings = word;
                         } else {
                             plugboard = addToPlugboard(word, plugboard);
                         }
@@ -181,6 +642,8 @@ public final class Main {
             } else {
                 if (settings == null) {
                     settings = getSetting(word, rotornamelist);
+                } else if (isRingSetting(word, rings, plugboard)) {
+                    rings = word;
                 } else {
                     plugboard = addToPlugboard(word, plugboard);
                 }
@@ -193,6 +656,7 @@ public final class Main {
             rotornamelist.toArray(rotornames);
             mymachine.insertRotors(rotornames);
             setUp(mymachine, settings);
+            mymachine.setRings(rings);
         } else {
             throw new EnigmaException("Empty rotor list");
         }
@@ -200,36 +664,173 @@ public final class Main {
 
 
     /**Used to process the lines taken directly from the input file.
+     *  When run from the command line, the lines are read, converted,
+     *  and written by the stages of a LinePipeline.
      *  @param mymachine my current machine
      **/
-    private void processInput(Machine mymachine) {
-        String line;
-        String myoutput;
-        boolean directiveFound = false;
-        boolean atleastOneStringToConvert = false;
+    void processInput(Machine mymachine) {
+        _writer = _concurrent ? new GroupedWriter(_output, _charset)
+            : new GroupedWriter(Channels.newChannel(_output), _charset,
+                                GroupedWriter.DEFAULT_BUFFER_SIZE, 1);
+        try {
+            if (_concurrent) {
+                new LinePipeline(this, mymachine, _input).process();
+            } else {
+                convertLines(mymachine);
+            }
+        } finally {
+            long flushing = Metrics.start();
+            _writer.close();
+            Metrics.wrote(0, flushing);
+        }
+    }
+
+    /** Convert the messages in the file named _inputName (or the
+     *  standard input) with MYMACHINE, as for processInput, reading them
+     *  in chunks with a StreamFilter, and writing them to the file named
+     *  _outputName (or the standard output). */
+    private void streamInput(Machine mymachine) {
+        InputStream in;
+        try {
+            in = _inputName == null ? System.in
+                : new FileInputStream(_inputName);
+        } catch (IOException excp) {
+            throw error("could not open %s", _inputName);
+        }
+        try (Reader input = new InputStreamReader(in, _charset);
+             PrintStream output = _outputName == null ? System.out
+                 : getOutput(_outputName)) {
+            _writer = new GroupedWriter(output, _charset);
+            try {
+                new StreamFilter(this, mymachine).process(input, _writer);
+            } finally {
+                long flushing = Metrics.start();
+                _writer.close();
+                Metrics.wrote(0, flushing);
+            }
+        } catch (IOException excp) {
+            throw error("error reading input: %s", excp.getMessage());
+        }
+    }
+
+    /** Convert the messages in _input with MYMACHINE, as for
+     *  processInput. */
+    private void convertLines(Machine mymachine) {
+        LineRules rules = lineRules(mymachine);
         while (_input.hasNext()) {
-            line = _input.nextLine();
-            line = line.trim();
-
-            if (!line.equals("")) {
-                if (line.startsWith("*")) {
-                    line = stripLine(line);
-                    processDirective(line, mymachine);
-                    directiveFound = true;
-                } else if (directiveFound) {
-                    myoutput = mymachine.convert(line);
-                    atleastOneStringToConvert = true;
-                    printMessageLine(myoutput);
+            String line = _input.nextLine().trim();
+            switch (rules.classify(line)) {
+            case BLANK_LINE:
+                printMessageLine("");
+                break;
+            case SETTINGS_LINE:
+                rules.applySettings(line);
+                break;
+            case MESSAGE_LINE:
+                int length = line.length();
+                if (_lineBuffer.length < length) {
+                    _lineBuffer = new char[Math.max(length,
+                            2 * _lineBuffer.length)];
+                }
+                line.getChars(0, length, _lineBuffer, 0);
+                rules.convert(_lineBuffer, 0, length);
+                printMessageLine(_lineBuffer, length);
+                break;
+            default:
+                break;
+            }
+        }
+        rules.finish();
+    }
+
+    /** Return the LineRules for processing input with MACHINE. */
+    LineRules lineRules(Machine machine) {
+        return new LineRules(machine);
+    }
+
+    /** The rules by which the lines of input are processed with one
+     *  machine, which every way of reading input (a Scanner, a
+     *  LinePipeline, a MessageBlockProcessor, a StreamFilter, or a
+     *  MappedFileProcessor) applies, so that all give the same results.
+     *  A line, once trimmed, is blank if it is empty, a settings line if
+     *  it starts with '*', and otherwise a message, which is ignored
+     *  unless a settings line precedes it.  The input must hold a
+     *  settings line and a message that is not ignored. */
+    final class LineRules {
+
+        /** Rules for lines processed with MACHINE. */
+        private LineRules(Machine machine) {
+            _machine = machine;
+        }
+
+        /** Return the kind of a line whose trimmed text starts with the
+         *  character FIRST, or is empty if FIRST is -1, given the lines
+         *  classified before it: BLANK_LINE, SETTINGS_LINE, MESSAGE_LINE,
+         *  or IGNORED_LINE. */
+        int classify(int first) {
+            if (first < 0) {
+                return BLANK_LINE;
+            } else if (first == '*') {
+                _directiveFound = true;
+                return SETTINGS_LINE;
+            } else if (!_directiveFound) {
+                return IGNORED_LINE;
+            }
+            _converted = true;
+            return MESSAGE_LINE;
+        }
+
+        /** Return the kind of the trimmed line LINE, as for
+         *  classify(int). */
+        int classify(String line) {
+            return classify(line.isEmpty() ? -1 : line.charAt(0));
+        }
+
+        /** Apply the settings line whose trimmed text is LINE to my
+         *  machine. */
+        void applySettings(String line) {
+            processDirective(stripLine(line), _machine);
+        }
+
+        /** Convert the message characters MSG[START .. END-1] in place
+         *  with my machine, in parallel if there are many. */
+        void convert(char[] msg, int start, int end) {
+            if (end - start >= PARALLEL_THRESHOLD) {
+                if (_parallel == null) {
+                    _parallel = new ParallelConverter(_machine);
                 }
+                _parallel.convert(msg, start, end, msg, start);
             } else {
-                printMessageLine("");
+                _machine.convert(msg, start, end, msg, start);
             }
         }
-        if (!directiveFound) {
-            throw new EnigmaException("Invalid input file: No directive given");
-        } else if (!atleastOneStringToConvert) {
-            throw new EnigmaException("Wrong number of arguments");
+
+        /** Count the lines classified by OTHER, which followed those
+         *  classified by me, as classified by me. */
+        void include(LineRules other) {
+            _directiveFound |= other._directiveFound;
+            _converted |= other._converted;
+        }
+
+        /** Check, after the last line, that the input held a settings
+         *  line and a message. */
+        void finish() {
+            if (!_directiveFound) {
+                throw new EnigmaException(
+                    "Invalid input file: No directive given");
+            } else if (!_converted) {
+                throw new EnigmaException("Wrong number of arguments");
+            }
         }
+
+        /** The machine applying settings and converting messages. */
+        private final Machine _machine;
+        /** Converts long messages with _machine, once needed. */
+        private ParallelConverter _parallel;
+        /** True iff a settings line has been classified. */
+        private boolean _directiveFound;
+        /** True iff a message has been classified. */
+        private boolean _converted;
     }
 
     /**Used to remove any extra tabs or newlines from config file.
@@ -243,58 +844,29 @@ public final class Main {
         newline = newline.replace("\n", " ");
         newline = newline.trim();
 
-        String outline = "";
+        StringBuilder outline = new StringBuilder(newline.length());
 
         for (int i = 0; i < newline.length(); i++) {
             if (i == 0) {
-                outline += newline.charAt(i);
+                outline.append(newline.charAt(i));
             } else if (!((newline.charAt(i) == ' ')
                     && (newline.charAt(i - 1) == ' '))) {
-                outline += newline.charAt(i);
+                outline.append(newline.charAt(i));
             }
         }
-        outline = outline.trim();
-        return outline;
+        return outline.toString().trim();
     }
 
-    /**
-     * Return an Enigma machine configured from the contents of
-     * configuration file _config.
-     * @param line the config line
-     * @return a new rotor
-     */
-    Rotor readRotorLine(String line) {
-        String name;
-        char rotortype;
-        String notches = "";
-        String cycles = "";
-        line = stripLine(line);
-        String[] linetokens = line.split(" ");
-
-        name = linetokens[0];
-
-        String rotortypestring = linetokens[1];
-        rotortype = rotortypestring.charAt(0);
-        if (rotortypestring.length() > 1) {
-            notches = rotortypestring.substring(1, rotortypestring.length());
-        }
-
-        for (int j = 2; j < linetokens.length; j++) {
-            cycles += linetokens[j];
-        }
-        return makeRotor(name, notches, cycles, rotortype);
-    }
-
-    /** Return a rotor, reading its description from _config.
+    /** Return a rotor.
      * @param name rotor name
      * @param notch notch
-     * @param cycles the cycles
+     * @param perm the permutation
      * @param rotorType config line
      * @return new rotor
      * **/
-    Rotor makeRotor(String name, String notch, String cycles, char rotorType) {
+    Rotor makeRotor(String name, String notch, Permutation perm,
+                    char rotorType) {
         Rotor rotor = null;
-        Permutation perm = new Permutation(cycles, _alphabet);
 
         if (rotorTypeMap == null) {
             rotorTypeMap = new HashMap<String, String>();
@@ -312,14 +884,6 @@ public final class Main {
         }
         return rotor;
     }
-    /**Checks any occurences of whitespaces.
-     * @param c the passed in character
-     * @return a boolean
-     * */
-    boolean isWhiteSpace(char c) {
-        return ((c == ' ') || (c == '\t') || (c == '\n'));
-    }
-
     /**
      * Set M according to the specification given on SETTINGS,
      * which must have the format specified in the assignment.
@@ -336,158 +900,190 @@ public final class Main {
      * have fewer letters).
      */
     private void printMessageLine(String msg) {
-        String group = null;
-        String newmsg = msg.replace(" ", "");
-        if (newmsg.equals("")) {
-            _output.println();
-        } else {
-            int min = 0;
-            for (int i = 0; i < newmsg.length(); i += 5) {
-                min = Math.min(i + 5, newmsg.length());
-                if (group == null) {
-                    group = newmsg.substring(i, min);
-                } else {
-                    group += " " + newmsg.substring(i, min);
-                }
-            }
-            _output.println(group);
-        }
+        printMessageLine(msg.toCharArray(), msg.length());
     }
-    /**Stores all the lines of the config file.
-     * @return a new arraylist
-     * */
-    ArrayList<String> getAllLines() {
-        ArrayList<String> allLines = null;
-        String line = null;
-        String assembledLine = null;
-        boolean foundStart = false;
-        boolean foundEnd = false;
-
-        while (_config.hasNext()) {
-            line = _config.nextLine();
-            line = line.trim();
-            if (!line.startsWith("(")) {
-                if (assembledLine != null) {
-                    if (allLines == null) {
-                        allLines = new ArrayList<String>();
-                    }
-                    allLines.add(assembledLine);
-                }
-                assembledLine = line;
-            } else if (!line.equals("")) {
-                if (assembledLine != null) {
-                    assembledLine += line;
-                } else {
-                    throw new EnigmaException("Ill-formed rotor description");
-                }
-            }
-        }
 
-        if (assembledLine != null) {
-            if (allLines == null) {
-                allLines = new ArrayList<String>();
-            }
-            allLines.add(assembledLine);
-        }
-        return allLines;
+    /**
+     * Print MSG[0 .. LENGTH-1] in groups of five, skipping blanks, as
+     * for printMessageLine(String).  The groups are encoded straight
+     * into the buffers of _writer, so no per-line objects are created.
+     * Called only while processing input, from one thread at a time.
+     */
+    void printMessageLine(char[] msg, int length) {
+        long started = Metrics.start();
+        _writer.writeLine(msg, length);
+        Metrics.wrote(1, started);
     }
     /**Reads through the alphabet in the line.
      * @param line the string line
      * */
     void readAlphabet(String line) {
-        if (line != null) {
+        if (line != null && _options.containsKey(BYTES_OPTION)) {
+            if (!line.trim().equals(BYTES_ALPHABET)) {
+                throw error("alphabet of a byte configuration must be %s",
+                            BYTES_ALPHABET);
+            }
+            _alphabet = Alphabet.bytes();
+        } else if (line != null) {
             _alphabet = new Alphabet(line.trim());
         } else {
             throw new EnigmaException("No alphabet line given");
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        if (_currRotorLine != null) {
-            return readRotorLine(_currRotorLine);
-        } else {
-            throw new EnigmaException("No rotor line");
+    /** Return a rotor, reading its description from TOKENS. */
+    private Rotor readRotor(ConfigTokenizer tokens) {
+        if (tokens.atCycle()) {
+            throw tokens.syntaxError("cycle outside a rotor description");
         }
-    }
-
-    /**Used to read through each rotor on every config line.
-     * @param allLines the list of all lines
-     * @return a new collection of rotors
-     * **/
-    Collection<Rotor> readRotors(ArrayList<String> allLines) {
-        String line;
-        Rotor r;
-        Collection<Rotor> possibleRotors = new ArrayList<Rotor>();
-        for (int j = 2; j < allLines.size(); j++) {
-            _currRotorLine = allLines.get(j);
-            r = readRotor();
-            possibleRotors.add(r);
+        String name = tokens.next("rotor name");
+        String type = tokens.next("rotor type");
+        char rotorType = type.charAt(0);
+        if (rotorType != 'M' && rotorType != 'N' && rotorType != 'R') {
+            throw tokens.syntaxError("Invalid rotor type");
+        }
+        String notches = type.substring(1);
+        if (_options.containsKey(BYTES_OPTION)) {
+            try {
+                notches = readBytes(notches);
+            } catch (EnigmaException excp) {
+                throw tokens.syntaxError("%s", excp.getMessage());
+            }
+        }
+        for (int i = 0; i < notches.length(); i++) {
+            if (!_alphabet.contains(notches.charAt(i))) {
+                throw tokens.syntaxError("notch '%c' is not in the alphabet",
+                                         notches.charAt(i));
+            }
         }
-        return possibleRotors;
+        int[] mapping =
+            tokens.nextCycles(_alphabet, _options.containsKey(BYTES_OPTION));
+        return makeRotor(name, notches, new Permutation(mapping, _alphabet),
+                         rotorType);
     }
 
-    /**Used to read into the config file and generate a Machine.
+    /** Used to read into the config file and generate a Machine.  The
+     *  file is read in a single pass by a ConfigTokenizer, and errors
+     *  give the line and column at which they were found.
      * @return a new machine
      * **/
-    private Machine readConfig() {
+    Machine readConfig() {
+        long started = Metrics.start();
+        ConfigTokenizer tokens = new ConfigTokenizer(_config);
+        if (tokens.atEnd()) {
+            throw new EnigmaException("No lines in the configuration file");
+        }
         try {
-            ArrayList<String> allLines = getAllLines();
-            if (allLines == null) {
-                throw new EnigmaException("No lines in the configuration file");
-            }
-            readAlphabet(allLines.get(0));
-
-            String line;
-            int numRotors = 0;
-            int numPawls = 0;
-            char r, p;
-
-            String[] lineTokens;
-            if (allLines.size() > 1) {
-                line = allLines.get(1);
-                if (line != null) {
-                    line = line.trim();
-                    String validCharacters = "";
-                    for (int i = 0; i < line.length(); i++) {
-                        if (!isWhiteSpace(line.charAt(i))) {
-                            validCharacters += line.charAt(i);
-                        }
-                    }
-                    if (validCharacters.length() > 1) {
-                        r = validCharacters.charAt(0);
-                        p = validCharacters.charAt(1);
-
-                        try {
-                            numRotors = Integer.parseInt("" + r);
-                            numPawls = Integer.parseInt("" + p);
-                        } catch (NumberFormatException e) {
-                            throw new EnigmaException("ill formed config file");
-                        }
-                    } else {
-                        throw new EnigmaException("Invalid # of rotors/pawls");
-                    }
-                }
-            } else {
-                throw new EnigmaException("No pawl and rotor line given");
-            }
-            Collection<Rotor> possibleRotors = readRotors(allLines);
-            return new Machine(_alphabet, numRotors, numPawls, possibleRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            readAlphabet(tokens.next("alphabet"));
+        } catch (EnigmaException excp) {
+            throw tokens.syntaxError("%s", excp.getMessage());
         }
+        int numRotors = tokens.nextInt("number of rotor slots");
+        if (numRotors < 2) {
+            throw tokens.syntaxError("need at least 2 rotor slots");
+        }
+        int numPawls = tokens.nextInt("number of pawls");
+        if (numPawls < 0 || numPawls >= numRotors) {
+            throw tokens.syntaxError("number of pawls must be 0 to %d",
+                                     numRotors - 1);
+        }
+        Collection<Rotor> possibleRotors = new ArrayList<Rotor>();
+        while (!tokens.atEnd()) {
+            possibleRotors.add(readRotor(tokens));
+        }
+        Machine machine =
+            new Machine(_alphabet, numRotors, numPawls, possibleRotors);
+        Metrics.configParsed(started);
+        return machine;
     }
 
+    /** Option selecting memory-mapped file processing. */
+    static final String MMAP_OPTION = "--mmap";
+    /** Option selecting the batch job service. */
+    static final String BATCH_OPTION = "--batch";
+    /** Option selecting a crib search. */
+    static final String CRIB_OPTION = "--crib";
+    /** Option giving the offset of the crib in the ciphertext. */
+    static final String CRIB_OFFSET_OPTION = "--crib-offset";
+    /** Option selecting a ciphertext-only attack. */
+    static final String ATTACK_OPTION = "--attack";
+    /** Option selecting conversion of binary data. */
+    static final String BYTES_OPTION = "--bytes";
+    /** Option selecting concurrent conversion of the messages after
+     *  each settings line. */
+    static final String INDEPENDENT_OPTION = "--independent";
+    /** Option selecting conversion of the input in chunks. */
+    static final String STREAM_OPTION = "--stream";
+    /** Option enabling Metrics. */
+    static final String METRICS_OPTION = "--metrics";
+    /** Option giving the file in which to save snapshots of a conversion
+     *  of binary data. */
+    static final String CHECKPOINT_OPTION = "--checkpoint";
+    /** Option resuming a conversion from its last snapshot. */
+    static final String RESUME_OPTION = "--resume";
+    /** All recognized options. */
+    private static final List<String> KNOWN_OPTIONS =
+        Arrays.asList(MMAP_OPTION, BATCH_OPTION, CRIB_OPTION,
+                      CRIB_OFFSET_OPTION, ATTACK_OPTION, BYTES_OPTION,
+                      INDEPENDENT_OPTION, METRICS_OPTION,
+                      CHECKPOINT_OPTION, RESUME_OPTION, STREAM_OPTION);
+    /** The alphabet line of a configuration read with BYTES_OPTION. */
+    static final String BYTES_ALPHABET = "BYTES";
+    /** Radix of the digits encoding bytes with BYTES_OPTION. */
+    private static final int HEX_RADIX = 16;
+    /** Length of the n-grams scored by a ciphertext-only attack. */
+    private static final int ATTACK_NGRAM_ORDER = 3;
+    /** Number of candidates printed by a ciphertext-only attack. */
+    private static final int ATTACK_RESULTS = 10;
+    /** Milliseconds between progress reports of a crib search. */
+    private static final long PROGRESS_PERIOD = 1000;
+    /** Default milliseconds between summaries of Metrics. */
+    private static final long DEFAULT_METRICS_PERIOD = 10000;
+    /** Milliseconds per second. */
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    /** Number of characters in each printed group. */
+    static final int GROUP_SIZE = 5;
+    /** Message lines at least this long are converted in parallel. */
+    static final int PARALLEL_THRESHOLD = 1 << 20;
+    /** Kind of a blank line (see LineRules). */
+    static final int BLANK_LINE = 0;
+    /** Kind of a settings line. */
+    static final int SETTINGS_LINE = 1;
+    /** Kind of a message line. */
+    static final int MESSAGE_LINE = 2;
+    /** Kind of a message line preceding every settings line, which is
+     *  ignored. */
+    static final int IGNORED_LINE = 3;
+
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
+    /** Options given on the command line. */
+    private HashMap<String, String> _options = new HashMap<String, String>();
+    /** Name of the input file, in --mmap, --bytes, and --stream modes
+     *  (null for the standard input). */
+    private String _inputName;
+    /** Name of the output file, in --mmap, --bytes, and --stream modes
+     *  (null for the standard output). */
+    private String _outputName;
     /** Source of input messages. */
     private Scanner _input;
     /** Source of machine configuration. */
     private Scanner _config;
     /** File for encoded/decoded messages. */
     private PrintStream _output;
-    /**Used to check the rotor lines.**/
-    private String _currRotorLine;
+    /** Encoding of the characters in _output. */
+    private Charset _charset = Charset.defaultCharset();
+    /** True iff input is processed by a LinePipeline and message lines
+     *  go to _output through a writer thread; otherwise all is done on
+     *  the thread calling processInput. */
+    private boolean _concurrent;
+    /** Writes message lines to _output while processing input. */
+    private GroupedWriter _writer;
     /**Used to check the rotor types.**/
     private HashMap<String, String> rotorTypeMap;
+    /** Reusable buffer holding the converted message line. */
+    private char[] _lineBuffer = new char[INITIAL_BUFFER_SIZE];
+    /** Initial size of _lineBuffer. */
+    private static final int INITIAL_BUFFER_SIZE = 256;
 }
@@ -0,0 +1,310 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import static enigma.EnigmaException.*;
+
+/** Processes an input file of settings and messages into an output file
+ *  through memory-mapped buffers, with the same results as
+ *  Main.processInput.  Files are treated as single-byte (ISO-8859-1)
+ *  text, so every character of the machine's alphabet must fit in a
+ *  byte; other bytes of a message, including those of multi-byte
+ *  characters, are copied unchanged.  The bytes of each message line
+ *  are copied from the input mapping in blocks, whose alphabet
+ *  characters are converted by the machine in a single call, and then
+ *  grouped into the output mapping.
+ *  @author Razi Mahmood
+ */
+class MappedFileProcessor {
+
+    /** A processor that converts with MACHINE, using MAIN to interpret
+     *  settings lines. */
+    MappedFileProcessor(Main main, Machine machine) {
+        this(main, machine, DEFAULT_WINDOW);
+    }
+
+    /** A processor that converts with MACHINE, using MAIN to interpret
+     *  settings lines, and mapping the files in windows of WINDOW
+     *  bytes. */
+    MappedFileProcessor(Main main, Machine machine, int window) {
+        _main = main;
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _window = window;
+        if (!_alphabet.isSingleByte()) {
+            throw error("alphabet does not fit in bytes");
+        }
+    }
+
+    /** Process the file named INPUTNAME into the file named
+     *  OUTPUTNAME. */
+    void process(String inputName, String outputName) {
+        FileChannel in;
+        try {
+            in = FileChannel.open(Paths.get(inputName), READ);
+        } catch (IOException excp) {
+            throw error("could not open %s", inputName);
+        }
+        try (FileChannel input = in;
+             FileChannel output = FileChannel.open(Paths.get(outputName),
+                     READ, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            _in = input;
+            _out = output;
+            try {
+                processLines();
+            } finally {
+                _out.truncate(outputPosition());
+            }
+        } catch (IOException excp) {
+            throw error("I/O error on %s or %s: %s", inputName, outputName,
+                        excp.getMessage());
+        }
+    }
+
+    /** Process every line of _in by the rules of Main.LineRules, as
+     *  Main.processInput does for lines from a Scanner. */
+    private void processLines() throws IOException {
+        long size = _in.size();
+        long end = lastToken(size);
+        long pos = 0;
+        Main.LineRules rules = _main.lineRules(_machine);
+        while (pos < end) {
+            long lineEnd = findLineEnd(pos, size);
+            long next = lineEnd;
+            if (next < size) {
+                next += 1;
+                if (byteAt(lineEnd) == '\r' && next < size
+                    && byteAt(next) == '\n') {
+                    next += 1;
+                }
+            }
+            long first = pos;
+            long last = lineEnd;
+            while (first < last && isTrimmed(byteAt(first))) {
+                first += 1;
+            }
+            while (last > first && isTrimmed(byteAt(last - 1))) {
+                last -= 1;
+            }
+            int kind = rules.classify(first == last ? -1
+                                      : byteAt(first) & BYTE_MASK);
+            switch (kind) {
+            case Main.BLANK_LINE:
+                writeSeparator();
+                break;
+            case Main.SETTINGS_LINE:
+                rules.applySettings(text(first, last));
+                break;
+            case Main.MESSAGE_LINE:
+                convertLine(first, last);
+                break;
+            default:
+                break;
+            }
+            pos = next;
+        }
+        rules.finish();
+    }
+
+    /** Convert the message bytes at positions FIRST .. LAST-1 of the
+     *  input, writing them to the output without blanks, in groups of
+     *  Main.GROUP_SIZE, followed by a line separator. */
+    private void convertLine(long first, long last) throws IOException {
+        long length = last - first;
+        mapInput(first, length);
+        reserveOutput(length + length / Main.GROUP_SIZE
+                      + LINE_SEPARATOR.length);
+        int inGroup = 0;
+        int i = (int) (first - _inBase);
+        int stop = (int) (last - _inBase);
+        while (i < stop) {
+            int count = Math.min(stop - i, BLOCK_SIZE);
+            _inBuffer.get(i, _bytes, 0, count);
+            i += count;
+            int n = 0;
+            for (int k = 0; k < count; k++) {
+                byte b = _bytes[k];
+                int index = _alphabet.index((char) (b & BYTE_MASK));
+                if (b != ' ' && index >= 0) {
+                    _text[n++] = index;
+                }
+            }
+            _machine.convert(_text, 0, n);
+            n = 0;
+            for (int k = 0; k < count; k++) {
+                byte b = _bytes[k];
+                if (b != ' ') {
+                    if (inGroup == Main.GROUP_SIZE) {
+                        _outBuffer.put((byte) ' ');
+                        inGroup = 0;
+                    }
+                    if (_alphabet.contains((char) (b & BYTE_MASK))) {
+                        b = (byte) _alphabet.toChar(_text[n++]);
+                    }
+                    _outBuffer.put(b);
+                    inGroup++;
+                }
+            }
+        }
+        _outBuffer.put(LINE_SEPARATOR);
+    }
+
+    /** Return the position of the terminator ('\n' or '\r') of the line
+     *  starting at POS, or SIZE if the line runs to the end of input. */
+    private long findLineEnd(long pos, long size) throws IOException {
+        long length = _window;
+        while (true) {
+            mapInput(pos, Math.min(length, size - pos));
+            int limit = _inBuffer.limit();
+            for (int i = (int) (pos - _inBase); i < limit; i++) {
+                byte b = _inBuffer.get(i);
+                if (b == '\n' || b == '\r') {
+                    return _inBase + i;
+                }
+            }
+            if (_inBase + limit >= size) {
+                return size;
+            }
+            if (length >= Integer.MAX_VALUE) {
+                throw error("line at byte %d is too long to map", pos);
+            }
+            length = Math.min(2 * length, Integer.MAX_VALUE);
+        }
+    }
+
+    /** Return the position just past the last non-whitespace byte of
+     *  the SIZE-byte input, or 0 if there is none.  As with
+     *  Scanner.hasNext, trailing lines holding only whitespace are not
+     *  processed. */
+    private long lastToken(long size) throws IOException {
+        long end = size;
+        while (end > 0) {
+            long start = Math.max(0, end - _window);
+            mapInput(start, end - start);
+            for (long p = end - 1; p >= start; p--) {
+                char c = (char) (_inBuffer.get((int) (p - _inBase))
+                                 & BYTE_MASK);
+                if (!Character.isWhitespace(c)) {
+                    return p + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /** Ensure that input positions POS .. POS+LENGTH-1 are mapped. */
+    private void mapInput(long pos, long length) throws IOException {
+        if (_inBuffer != null && pos >= _inBase
+            && pos + length <= _inBase + _inBuffer.limit()) {
+            return;
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw error("line at byte %d is too long to map", pos);
+        }
+        long mapped = Math.min(Math.max(length, _window), _in.size() - pos);
+        mapped = Math.min(mapped, Integer.MAX_VALUE);
+        _inBase = pos;
+        _inBuffer = _in.map(FileChannel.MapMode.READ_ONLY, pos, mapped);
+    }
+
+    /** Ensure that at least LENGTH bytes can be written at the current
+     *  output position. */
+    private void reserveOutput(long length) throws IOException {
+        if (_outBuffer != null && _outBuffer.remaining() >= length) {
+            return;
+        }
+        _outWindow = Math.min(2 * _outWindow, _window);
+        long mapped = Math.max(length, _outWindow);
+        if (mapped > Integer.MAX_VALUE) {
+            throw error("output line too long to map");
+        }
+        _outBase = outputPosition();
+        _outBuffer = _out.map(FileChannel.MapMode.READ_WRITE, _outBase,
+                              mapped);
+    }
+
+    /** Write a line separator to the output. */
+    private void writeSeparator() throws IOException {
+        reserveOutput(LINE_SEPARATOR.length);
+        _outBuffer.put(LINE_SEPARATOR);
+    }
+
+    /** Return the number of bytes written to the output so far. */
+    private long outputPosition() {
+        return _outBuffer == null ? 0 : _outBase + _outBuffer.position();
+    }
+
+    /** Return the input byte at position POS. */
+    private byte byteAt(long pos) throws IOException {
+        mapInput(pos, 1);
+        return _inBuffer.get((int) (pos - _inBase));
+    }
+
+    /** Return the input bytes FIRST .. LAST-1 as text. */
+    private String text(long first, long last) throws IOException {
+        mapInput(first, last - first);
+        byte[] bytes = new byte[(int) (last - first)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = _inBuffer.get((int) (first - _inBase) + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /** Return true iff B is removed from the ends of a line by
+     *  String.trim. */
+    private static boolean isTrimmed(byte b) {
+        return (b & BYTE_MASK) <= ' ';
+    }
+
+    /** Default size of each mapped window. */
+    static final int DEFAULT_WINDOW = 1 << 26;
+    /** Size of the first output window.  Mapping extends the output
+     *  file, so output windows start small and double up to the input
+     *  window size. */
+    private static final int INITIAL_OUTPUT_WINDOW = 1 << 15;
+    /** Number of input bytes converted at a time. */
+    private static final int BLOCK_SIZE = 1 << 13;
+    /** Mask converting a signed byte to an unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+    /** The bytes written at the end of each output line. */
+    private static final byte[] LINE_SEPARATOR =
+        System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1);
+
+    /** Interprets settings lines. */
+    private final Main _main;
+    /** Machine doing the conversions. */
+    private final Machine _machine;
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+    /** Size of each mapped window. */
+    private final int _window;
+    /** The block of input bytes being converted. */
+    private final byte[] _bytes = new byte[BLOCK_SIZE];
+    /** The alphabet indices of the characters of _bytes converted by
+     *  _machine. */
+    private final int[] _text = new int[BLOCK_SIZE];
+    /** Input file. */
+    private FileChannel _in;
+    /** Output file. */
+    private FileChannel _out;
+    /** Currently mapped window of the input. */
+    private MappedByteBuffer _inBuffer;
+    /** Position in the input of _inBuffer[0]. */
+    private long _inBase;
+    /** Currently mapped window of the output. */
+    private MappedByteBuffer _outBuffer;
+    /** Position in the output of _outBuffer[0]. */
+    private long _outBase;
+    /** Size of the most recently mapped output window. */
+    private int _outWindow = INITIAL_OUTPUT_WINDOW / 2;
+}
@@ -0,0 +1,190 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Processes settings and messages read by a Scanner with the same
+ *  results as Main.processInput, converting the messages on several
+ *  threads.  Since each settings line sets every rotor, the plugboard,
+ *  and all positions of the machine, the lines from one settings line
+ *  to the next may be processed independently of all others.  The input
+ *  is cut at settings lines into tasks of about TASK_CHARS characters
+ *  (a task holds many short messages, or one long one), and each task
+ *  is processed by a thread of a pool, with its own copy of the
+ *  machine, into a buffer; the buffers are written in input order.  At
+ *  most a few tasks per thread are outstanding at once, so memory use
+ *  does not grow with the input.
+ *  @author Razi Mahmood
+ */
+class MessageBlockProcessor {
+
+    /** A processor converting with copies of MACHINE, using MAIN to
+     *  interpret settings lines, on THREADS threads. */
+    MessageBlockProcessor(Main main, Machine machine, int threads) {
+        if (threads < 1) {
+            throw error("need at least one thread");
+        }
+        _main = main;
+        _prototype = machine;
+        _threads = threads;
+    }
+
+    /** Process all the lines of INPUT, writing the results to OUTPUT,
+     *  whose characters are encoded with CHARSET. */
+    void process(Scanner input, PrintStream output, Charset charset) {
+        ExecutorService pool =
+            Executors.newFixedThreadPool(_threads, r -> {
+                Thread thread = new Thread(r, "enigma-blocks");
+                thread.setDaemon(true);
+                return thread;
+            });
+        ThreadLocal<Machine> machines =
+            ThreadLocal.withInitial(_prototype::copy);
+        ArrayDeque<Future<Result>> pending =
+            new ArrayDeque<Future<Result>>();
+        Main.LineRules checked = _main.lineRules(_prototype);
+        try {
+            ArrayList<String> lines = new ArrayList<String>();
+            long chars = 0;
+            while (input.hasNext()) {
+                String line = input.nextLine().trim();
+                if (line.startsWith("*") && chars >= TASK_CHARS) {
+                    pending.add(submit(pool, machines, lines, charset));
+                    lines = new ArrayList<String>();
+                    chars = 0;
+                    if (pending.size() >= _threads * TASKS_PER_THREAD) {
+                        checked.include(write(pending.remove(),
+                                              output)._rules);
+                    }
+                }
+                lines.add(line);
+                chars += line.length() + 1;
+            }
+            pending.add(submit(pool, machines, lines, charset));
+            while (!pending.isEmpty()) {
+                checked.include(write(pending.remove(), output)._rules);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        checked.finish();
+    }
+
+    /** Return the pending result of processing LINES in POOL with a
+     *  machine from MACHINES, encoding output with CHARSET. */
+    private Future<Result> submit(ExecutorService pool,
+                                  ThreadLocal<Machine> machines,
+                                  ArrayList<String> lines,
+                                  Charset charset) {
+        return pool.submit(() -> process(machines.get(), lines, charset));
+    }
+
+    /** Wait for PENDING, write its output to OUTPUT, and return it,
+     *  throwing the error that ended its processing, if any, or that
+     *  OUTPUT (which swallows its own) met in writing. */
+    private Result write(Future<Result> pending, PrintStream output) {
+        Result result;
+        try {
+            result = pending.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+        long started = Metrics.start();
+        output.write(result._output, 0, result._output.length);
+        if (output.checkError()) {
+            throw error("error writing output: output stream reported an "
+                        + "error");
+        }
+        Metrics.wrote(result._lines, started);
+        if (result._failure != null) {
+            throw result._failure;
+        }
+        return result;
+    }
+
+    /** Return the result of processing LINES (trimmed, and starting with
+     *  a settings line unless they begin the input) with MACHINE by the
+     *  rules of Main.LineRules, encoding output with CHARSET. */
+    private Result process(Machine machine, ArrayList<String> lines,
+                           Charset charset) {
+        Result result = new Result();
+        Main.LineRules rules = _main.lineRules(machine);
+        result._rules = rules;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupedWriter writer =
+            new GroupedWriter(Channels.newChannel(bytes), charset,
+                              BUFFER_SIZE, 1);
+        try {
+            for (String line : lines) {
+                switch (rules.classify(line)) {
+                case Main.BLANK_LINE:
+                    writer.writeLine(NO_CHARS, 0);
+                    break;
+                case Main.SETTINGS_LINE:
+                    rules.applySettings(line);
+                    continue;
+                case Main.MESSAGE_LINE:
+                    char[] text = line.toCharArray();
+                    rules.convert(text, 0, text.length);
+                    writer.writeLine(text, text.length);
+                    break;
+                default:
+                    continue;
+                }
+                result._lines += 1;
+            }
+        } catch (RuntimeException excp) {
+            result._failure = excp;
+        }
+        writer.close();
+        result._output = bytes.toByteArray();
+        return result;
+    }
+
+    /** The outcome of processing one task. */
+    private static final class Result {
+        /** The encoded output. */
+        private byte[] _output;
+        /** The number of lines of output. */
+        private long _lines;
+        /** The rules by which the task's lines were processed. */
+        private Main.LineRules _rules;
+        /** The error that ended processing, or null. */
+        private RuntimeException _failure;
+    }
+
+    /** Number of characters of input after which a task ends at the
+     *  next settings line. */
+    static final int TASK_CHARS = 1 << 16;
+    /** Number of tasks per thread that may be outstanding. */
+    static final int TASKS_PER_THREAD = 4;
+    /** Size of the buffer of each task's GroupedWriter. */
+    private static final int BUFFER_SIZE = 1 << 12;
+    /** The conversion of a blank line. */
+    private static final char[] NO_CHARS = new char[0];
+
+    /** Interprets settings lines. */
+    private final Main _main;
+    /** Machine copied by each thread. */
+    private final Machine _prototype;
+    /** Number of threads converting. */
+    private final int _threads;
+}
@@ -0,0 +1,99 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the MessageBlockProcessor class.
+ *  @author Razi Mahmood
+ */
+public class MessageBlockProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Return the output of processing INPUT with CONFIG by a
+     *  MessageBlockProcessor on THREADS threads, followed by the message
+     *  of the error thrown, if any. */
+    private static String blocks(String config, String input, int threads) {
+        Main parser = new Main(new Scanner(config));
+        Machine machine = parser.readConfig();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        String error = "";
+        try {
+            new MessageBlockProcessor(parser, machine, threads)
+                .process(new Scanner(input), out, Charset.defaultCharset());
+        } catch (EnigmaException excp) {
+            error = excp.getMessage();
+        }
+        out.flush();
+        return new String(bytes.toByteArray(), Charset.defaultCharset())
+            + error;
+    }
+
+    /** Return random input of about LINES lines, drawn from RANDOM, of
+     *  settings lines (the first of which starts the input iff START),
+     *  messages, and blank lines.  If BAD, a bad settings line is put
+     *  in the middle. */
+    private static String randomInput(Random random, int lines,
+                                      boolean start, boolean bad) {
+        StringBuilder input = new StringBuilder();
+        if (start) {
+            input.append("* B I II AA\n");
+        }
+        for (int i = 0; i < lines; i++) {
+            if (bad && i == lines / 2) {
+                input.append("* B I I AA\n");
+            } else if (random.nextInt(10) == 0) {
+                input.append(random.nextBoolean() ? "* B I II " : "* B II I ");
+                input.append((char) ('A' + random.nextInt(26)));
+                input.append((char) ('A' + random.nextInt(26)));
+                input.append('\n');
+            } else if (random.nextInt(20) == 0) {
+                input.append('\n');
+            } else {
+                for (int j = random.nextInt(60); j > 0; j--) {
+                    input.append(random.nextInt(8) == 0 ? ' '
+                                 : (char) ('A' + random.nextInt(26)));
+                }
+                input.append('\n');
+            }
+        }
+        return input.toString();
+    }
+
+    @Test
+    public void checkSameAsSerial() {
+        String config = MetricsTest.CONFIG;
+        String[] inputs = {
+            MetricsTest.INPUT,
+            "IGNORED\n\n* B I II AA\nABC\n\n  * B II I ZZ (AB) \nABC\n",
+            "ABC\n",
+            "* B I II AA\n",
+            "* B I II AA\nABC\n* B I I AA\nABC\n",
+            "",
+        };
+        for (String input : inputs) {
+            for (int threads = 1; threads <= 3; threads++) {
+                assertEquals(input, LinePipelineTest.serial(config, input),
+                             blocks(config, input, threads));
+            }
+        }
+        Random random = new Random(5);
+        for (int k = 0; k < 4; k++) {
+            String input = randomInput(random, 10000, k % 2 == 0, k >= 2);
+            assertTrue(input.length() > 2 * MessageBlockProcessor.TASK_CHARS);
+            assertEquals(LinePipelineTest.serial(config, input),
+                         blocks(config, input, 3));
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Counts and times the work of the enigma package, for finding where a
+ *  run spends its time.  Recording is off unless enable() has been
+ *  called (see Main's --metrics option); while it is off, each of the
+ *  static recording methods does no more than test one field, so that
+ *  they may be called freely from Machine and Main.  Callers time an
+ *  operation by passing the value of start() to the method recording
+ *  its end.  While on, the metrics are registered as the JMX MBean
+ *  named OBJECT_NAME, and a summary is written periodically to a
+ *  stream.  Counts are kept in LongAdders, since machines on many
+ *  threads may record at once.
+ *  @author Razi Mahmood
+ */
+final class Metrics implements MetricsMBean {
+
+    /** Start recording, registering the metrics with the platform MBean
+     *  server and writing their summary to DUMP every PERIOD
+     *  milliseconds (never, if PERIOD is 0).  Returns the metrics. */
+    static synchronized Metrics enable(long period, PrintStream dump) {
+        disable();
+        Metrics metrics = new Metrics(dump);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+        } catch (JMException excp) {
+            throw error("cannot register metrics: %s", excp.getMessage());
+        }
+        if (period > 0) {
+            metrics._dumper =
+                Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "enigma-metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            metrics._dumper.scheduleAtFixedRate(
+                () -> dump.println(metrics), period, period,
+                TimeUnit.MILLISECONDS);
+        }
+        _current = metrics;
+        return metrics;
+    }
+
+    /** Stop recording, writing a final summary if recording was on, and
+     *  unregister the metrics. */
+    static synchronized void disable() {
+        Metrics metrics = _current;
+        if (metrics == null) {
+            return;
+        }
+        _current = null;
+        if (metrics._dumper != null) {
+            metrics._dumper.shutdownNow();
+        }
+        metrics._dump.println(metrics);
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException excp) {
+            /* Already unregistered by someone else: nothing to do. */
+        }
+    }
+
+    /** Return the metrics being recorded, or null if recording is
+     *  off. */
+    static Metrics current() {
+        return _current;
+    }
+
+    /** Return a starting time for one of the methods below, or 0 if
+     *  recording is off. */
+    static long start() {
+        return _current == null ? 0 : System.nanoTime();
+    }
+
+    /** Record the conversion of CHARS characters, begun at START. */
+    static void converted(long chars, long start) {
+        Metrics metrics = _current;
+        if (metrics != null && start != 0) {
+            metrics._chars.add(chars);
+            metrics._convertNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /** Record KEYPRESSES keypresses, SLOW of which moved a rotor other
+     *  than the rightmost. */
+    static void stepped(long keypresses, long slow) {
+        Metrics metrics = _current;
+        if (metrics != null) {
+            metrics._keypresses.add(keypresses);
+            metrics._slowSteps.add(slow);
+        }
+    }
+
+    /** Record the reading of a configuration begun at START. */
+    static void configParsed(long start) {
+        Metrics metrics = _current;
+        if (metrics != null && start != 0) {
+            metrics._configs.increment();
+            metrics._configNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /** Record the writing of LINES lines of output, or the flushing of
+     *  output if LINES is 0, begun at START. */
+    static void wrote(long lines, long start) {
+        Metrics metrics = _current;
+        if (metrics != null && start != 0) {
+            metrics._lines.add(lines);
+            metrics._outputNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /** Record a call of Main.process begun at START. */
+    static void processed(long start) {
+        Metrics metrics = _current;
+        if (metrics != null && start != 0) {
+            metrics._processNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /** Metrics whose summaries go to DUMP. */
+    private Metrics(PrintStream dump) {
+        _dump = dump;
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        return _chars.sum();
+    }
+
+    @Override
+    public long getConversionNanos() {
+        return _convertNanos.sum();
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        long nanos = _convertNanos.sum();
+        return nanos == 0 ? 0.0 : _chars.sum() * NANOS_PER_SECOND / nanos;
+    }
+
+    @Override
+    public long getConfigsParsed() {
+        return _configs.sum();
+    }
+
+    @Override
+    public long getConfigParseNanos() {
+        return _configNanos.sum();
+    }
+
+    @Override
+    public long getKeypresses() {
+        return _keypresses.sum();
+    }
+
+    @Override
+    public long getSlowRotorSteps() {
+        return _slowSteps.sum();
+    }
+
+    @Override
+    public long getLinesWritten() {
+        return _lines.sum();
+    }
+
+    @Override
+    public long getOutputNanos() {
+        return _outputNanos.sum();
+    }
+
+    @Override
+    public long getProcessNanos() {
+        return _processNanos.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] {
+                _chars, _convertNanos, _configs, _configNanos, _keypresses,
+                _slowSteps, _lines, _outputNanos, _processNanos }) {
+            adder.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("metrics: %d chars in %.3f ms (%.0f chars/s),"
+                             + " %d keypresses, %d slow steps,"
+                             + " %d configs in %.3f ms,"
+                             + " %d lines written in %.3f ms,"
+                             + " process %.3f ms",
+                             getCharactersConverted(),
+                             getConversionNanos() / NANOS_PER_MILLI,
+                             getCharactersPerSecond(), getKeypresses(),
+                             getSlowRotorSteps(), getConfigsParsed(),
+                             getConfigParseNanos() / NANOS_PER_MILLI,
+                             getLinesWritten(),
+                             getOutputNanos() / NANOS_PER_MILLI,
+                             getProcessNanos() / NANOS_PER_MILLI);
+    }
+
+    /** The JMX name under which the metrics are registered. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** The metrics being recorded, or null if recording is off. */
+    private static volatile Metrics _current;
+
+    /** Stream to which summaries are written. */
+    private final PrintStream _dump;
+    /** Writes periodic summaries, or null. */
+    private ScheduledExecutorService _dumper;
+    /** Characters converted, and the time taken. */
+    private final LongAdder _chars = new LongAdder(),
+        _convertNanos = new LongAdder();
+    /** Configurations read, and the time taken. */
+    private final LongAdder _configs = new LongAdder(),
+        _configNanos = new LongAdder();
+    /** Keypresses, and those that moved a rotor other than the
+     *  rightmost. */
+    private final LongAdder _keypresses = new LongAdder(),
+        _slowSteps = new LongAdder();
+    /** Lines written, and the time taken to write and flush output. */
+    private final LongAdder _lines = new LongAdder(),
+        _outputNanos = new LongAdder();
+    /** Time spent in Main.process. */
+    private final LongAdder _processNanos = new LongAdder();
+}
@@ -0,0 +1,43 @@
+package enigma;
+
+/** The management interface of Metrics, through which JMX clients see
+ *  the work done by the enigma package while metrics are enabled.  It
+ *  is public because JMX requires it.  Times are in nanoseconds.
+ *  @author Razi Mahmood
+ */
+public interface MetricsMBean {
+
+    /** Return the number of characters (or bytes) converted. */
+    long getCharactersConverted();
+
+    /** Return the time spent converting them. */
+    long getConversionNanos();
+
+    /** Return the characters converted per second of conversion time. */
+    double getCharactersPerSecond();
+
+    /** Return the number of configurations read. */
+    long getConfigsParsed();
+
+    /** Return the time spent reading configurations. */
+    long getConfigParseNanos();
+
+    /** Return the number of keypresses, each of which steps the rotors. */
+    long getKeypresses();
+
+    /** Return the number of keypresses that moved a rotor other than the
+     *  rightmost one. */
+    long getSlowRotorSteps();
+
+    /** Return the number of message lines written. */
+    long getLinesWritten();
+
+    /** Return the time spent writing and flushing output. */
+    long getOutputNanos();
+
+    /** Return the time spent in Main.process. */
+    long getProcessNanos();
+
+    /** Set all counts and times to 0. */
+    void reset();
+}
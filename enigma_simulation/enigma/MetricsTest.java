@@ -0,0 +1,126 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Razi Mahmood
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** A small configuration. */
+    static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 3 2\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "   (RX) (SZ) (TV)\n";
+
+    /** Messages converted with CONFIG. */
+    static final String INPUT =
+        "* B I II AA\nHELLO WORLD\nQQQQQQQQQQQQQQQQQQQQQQQQQQQQQQ\n";
+
+    @After
+    public void disable() {
+        Metrics.disable();
+    }
+
+    /** Run Main on CONFIG and INPUT, in temporary files. */
+    private static void runMain() throws IOException {
+        File config = File.createTempFile("metrics", ".conf");
+        File input = File.createTempFile("metrics", ".in");
+        File output = File.createTempFile("metrics", ".out");
+        try {
+            Files.write(config.toPath(), CONFIG.getBytes("US-ASCII"));
+            Files.write(input.toPath(), INPUT.getBytes("US-ASCII"));
+            new Main(new String[] { config.getPath(), input.getPath(),
+                                    output.getPath() }).process();
+        } finally {
+            config.delete();
+            input.delete();
+            output.delete();
+        }
+    }
+
+    @Test
+    public void checkDisabled() throws IOException {
+        assertNull(Metrics.current());
+        assertEquals(0, Metrics.start());
+        Metrics.converted(1, 1);
+        Metrics.stepped(1, 1);
+        runMain();
+        assertNull(Metrics.current());
+    }
+
+    @Test
+    public void checkCounts() throws IOException {
+        ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        Metrics metrics = Metrics.enable(0, new PrintStream(dump));
+        assertSame(metrics, Metrics.current());
+        runMain();
+        assertEquals(1, metrics.getConfigsParsed());
+        assertTrue(metrics.getConfigParseNanos() > 0);
+        assertEquals(40, metrics.getKeypresses());
+        assertEquals(41, metrics.getCharactersConverted());
+        assertTrue(metrics.getSlowRotorSteps() >= 1);
+        assertTrue(metrics.getSlowRotorSteps() < 40);
+        assertEquals(2, metrics.getLinesWritten());
+        assertTrue(metrics.getOutputNanos() > 0);
+        assertTrue(metrics.getCharactersPerSecond() > 0);
+        assertEquals(0, dump.size());
+
+        Metrics.disable();
+        assertNull(Metrics.current());
+        assertTrue(dump.toString().startsWith("metrics: 41 chars"));
+        runMain();
+        assertEquals(1, metrics.getConfigsParsed());
+        metrics.reset();
+        assertEquals(0, metrics.getKeypresses());
+    }
+
+    @Test
+    public void checkMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        Metrics.enable(0, new PrintStream(new ByteArrayOutputStream()));
+        assertTrue(server.isRegistered(name));
+        Machine machine = ByteStreamConverterTest.byteMachine(1);
+        byte[] data = new byte[1000];
+        machine.convert(data, 0, data.length, data, 0);
+        assertEquals(1000L, server.getAttribute(name, "Keypresses"));
+        assertEquals(1000L, server.getAttribute(name,
+                                                "CharactersConverted"));
+        Metrics.disable();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void checkPeriodicDump() throws InterruptedException {
+        ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(dump, true);
+        Metrics.enable(1, out);
+        for (int i = 0; i < 200 && dump.size() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Metrics.disable();
+        assertTrue(dump.toString().startsWith("metrics: 0 chars"));
+    }
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** Class that represents a rotating rotor in the enigma machine.
  *  @author Razi Mahmood
  */
@@ -13,34 +15,67 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        int size = size();
+        _stepsToNotch = new int[size];
+        Arrays.fill(_stepsToNotch, -1);
+        _notchBits = new long[(size + Long.SIZE - 1) / Long.SIZE];
+        for (int i = 0; i < notches.length(); i++) {
+            int notch = alphabet().toInt(notches.charAt(i));
+            _notchBits[notch / Long.SIZE] |= 1L << notch;
+            for (int steps = 0; steps < size; steps++) {
+                int setting = Math.floorMod(notch - steps, size);
+                if (_stepsToNotch[setting] >= 0
+                    && _stepsToNotch[setting] <= steps) {
+                    break;
+                }
+                _stepsToNotch[setting] = steps;
+            }
+        }
     }
 
     @Override
     void advance() {
         set(this.setting() + 1);
     }
+
     @Override
-    boolean atNotch() {
-        boolean found = false;
-        int i = 0;
-        char cNotch;
-
-        while (!found && (i < _notches.length())) {
-            cNotch = _notches.charAt(i);
-            if (this.permutation().alphabet().toInt(cNotch) == this.setting()) {
-                found = true;
-            } else {
-                i++;
-            }
-        }
-        return found;
+    boolean atNotch(int setting) {
+        return _stepsToNotch[setting] == 0;
     }
+
+    @Override
+    int stepsToNotch(int setting) {
+        return _stepsToNotch[setting];
+    }
+
+    @Override
+    long[] notchBits() {
+        return _notchBits;
+    }
+
+    @Override
+    RotorKind kind() {
+        return RotorKind.MOVING;
+    }
+
+    @Override
+    Rotor copy() {
+        MovingRotor result = new MovingRotor(name(), permutation(), _notches);
+        result.set(setting());
+        return result;
+    }
+
     @Override
     boolean rotates() {
         return true;
     }
 
     /**This variable stores the notches String being passed in.**/
-    private String _notches;
+    private final String _notches;
+    /** The number of advances from each setting to the nearest notch
+     *  (-1 everywhere if I have none). */
+    private final int[] _stepsToNotch;
+    /** My notches, as returned by notchBits(). */
+    private final long[] _notchBits;
 
 }
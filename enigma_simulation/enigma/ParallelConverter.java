@@ -0,0 +1,172 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/** Converts large messages on several cores.  The message is split into
+ *  chunks; the number of keypresses in each chunk is counted in
+ *  parallel, a copy of the machine is sought forward to the start of
+ *  each chunk, and the chunks are then converted in parallel.  The
+ *  result, and the final state of the machine, are the same as those of
+ *  Machine.convert.
+ *  @author Razi Mahmood
+ */
+class ParallelConverter {
+
+    /** A converter for MACHINE that uses the common fork/join pool and
+     *  chunks of DEFAULT_CHUNK_SIZE characters. */
+    ParallelConverter(Machine machine) {
+        this(machine, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /** A converter for MACHINE that runs in POOL, splitting messages
+     *  into chunks of CHUNKSIZE characters. */
+    ParallelConverter(Machine machine, ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new EnigmaException("chunk size must be positive");
+        }
+        _machine = machine;
+        _pool = pool;
+        _chunkSize = chunkSize;
+    }
+
+    /** Convert MSG[START .. END-1] into OUT, starting at OUT[OUTPOS], and
+     *  advance my machine accordingly, exactly as
+     *  Machine.convert(char[], int, int, char[], int) would.  Returns the
+     *  number of characters written. */
+    int convert(char[] msg, int start, int end, char[] out, int outPos) {
+        int chunks = (int) (((long) end - start + _chunkSize - 1)
+                            / _chunkSize);
+        if (chunks <= 1) {
+            return _machine.convert(msg, start, end, out, outPos);
+        }
+        Alphabet alphabet = _machine.alphabet();
+
+        long[] keypresses = new long[chunks];
+        ArrayList<ForkJoinTask<?>> counts = new ArrayList<>();
+        for (int j = 0; j < chunks; j++) {
+            counts.add(new CountTask(alphabet, msg, chunkStart(start, j),
+                                     chunkEnd(start, end, j),
+                                     keypresses, j));
+        }
+        runAll(counts);
+
+        Machine cursor = _machine.copy();
+        ArrayList<ForkJoinTask<?>> conversions = new ArrayList<>();
+        for (int j = 0; j < chunks; j++) {
+            int from = chunkStart(start, j);
+            conversions.add(new ConvertTask(cursor.copy(), msg, from,
+                                            chunkEnd(start, end, j), out,
+                                            outPos + from - start));
+            cursor.seek(keypresses[j]);
+        }
+        runAll(conversions);
+
+        _machine.restoreSettings(cursor.rotorSettings());
+        return end - start;
+    }
+
+    /** Run all of TASKS in my pool and wait for them to finish. */
+    private void runAll(ArrayList<ForkJoinTask<?>> tasks) {
+        _pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /** Return the index of the first character of chunk J of a message
+     *  starting at START. */
+    private int chunkStart(int start, int j) {
+        return (int) (start + (long) j * _chunkSize);
+    }
+
+    /** Return the index just past chunk J of a message occupying
+     *  START .. END-1. */
+    private int chunkEnd(int start, int end, int j) {
+        return (int) Math.min(end, start + (long) (j + 1) * _chunkSize);
+    }
+
+    /** Counts the keypresses in one chunk. */
+    private static class CountTask extends RecursiveAction {
+
+        /** A task storing into RESULT[J] the number of characters of
+         *  MSG[START .. END-1] in ALPHABET. */
+        CountTask(Alphabet alphabet, char[] msg, int start, int end,
+                  long[] result, int j) {
+            _alphabet = alphabet;
+            _msg = msg;
+            _start = start;
+            _end = end;
+            _result = result;
+            _j = j;
+        }
+
+        @Override
+        protected void compute() {
+            long count = 0;
+            for (int i = _start; i < _end; i++) {
+                if (_alphabet.index(_msg[i]) >= 0) {
+                    count++;
+                }
+            }
+            _result[_j] = count;
+        }
+
+        /** Alphabet whose characters are counted. */
+        private final Alphabet _alphabet;
+        /** Message being counted. */
+        private final char[] _msg;
+        /** Bounds of my chunk. */
+        private final int _start, _end;
+        /** Where the count goes. */
+        private final long[] _result;
+        /** Index of my chunk. */
+        private final int _j;
+    }
+
+    /** Converts one chunk on its own machine. */
+    private static class ConvertTask extends RecursiveAction {
+
+        /** A task converting MSG[START .. END-1] with MACHINE into OUT,
+         *  starting at OUT[OUTPOS]. */
+        ConvertTask(Machine machine, char[] msg, int start, int end,
+                    char[] out, int outPos) {
+            _machine = machine;
+            _msg = msg;
+            _start = start;
+            _end = end;
+            _out = out;
+            _outPos = outPos;
+        }
+
+        @Override
+        protected void compute() {
+            _machine.convert(_msg, _start, _end, _out, _outPos);
+        }
+
+        /** Machine positioned at the start of my chunk. */
+        private final Machine _machine;
+        /** Message being converted. */
+        private final char[] _msg;
+        /** Bounds of my chunk. */
+        private final int _start, _end;
+        /** Destination buffer. */
+        private final char[] _out;
+        /** Position in _out of my first character. */
+        private final int _outPos;
+    }
+
+    /** Default number of characters in each chunk. */
+    static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+    /** Machine whose conversions I perform. */
+    private final Machine _machine;
+    /** Pool running the chunk tasks. */
+    private final ForkJoinPool _pool;
+    /** Number of characters in each chunk. */
+    private final int _chunkSize;
+}
@@ -0,0 +1,70 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+import static enigma.KeystreamTableTest.SETTINGS;
+import static enigma.KeystreamTableTest.randomMessage;
+
+/** The suite of all JUnit tests for Machine.seek and the
+ *  ParallelConverter class.
+ *  @author Razi Mahmood
+ */
+public class ParallelConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    @Test
+    public void checkSeek() {
+        Machine stepped = navalMachine(SETTINGS);
+        long done = 0;
+        for (long n : new long[] { 0, 1, 3, 25, 26, 650, 677, 20000 }) {
+            for (; done < n; done++) {
+                stepped.step();
+            }
+            Machine sought = navalMachine(SETTINGS);
+            sought.seek(n);
+            assertArrayEquals(msg("seek", "%d keypresses", n),
+                              stepped.rotorSettings(),
+                              sought.rotorSettings());
+            assertEquals(stepped.convert(7), sought.convert(7));
+            done++;
+        }
+    }
+
+    @Test
+    public void checkCopyIsIndependent() {
+        Machine machine = navalMachine(SETTINGS);
+        Machine copy = machine.copy();
+        String msg = randomMessage(500, 2);
+        assertEquals(machine.convert(msg), copy.convert(msg));
+        copy.seek(77);
+        assertEquals(navalMachine(SETTINGS).convert(msg + msg)
+                     .substring(msg.length()),
+                     machine.convert(msg));
+    }
+
+    @Test
+    public void checkParallelMatchesSerial() {
+        String msg = randomMessage(200000, 3);
+        Machine serial = navalMachine(SETTINGS);
+        String expected = serial.convert(msg);
+
+        Machine machine = navalMachine(SETTINGS);
+        ParallelConverter converter =
+            new ParallelConverter(machine, new ForkJoinPool(4), 1000);
+        char[] buffer = msg.toCharArray();
+        converter.convert(buffer, 0, buffer.length, buffer, 0);
+        assertEquals(expected, new String(buffer));
+        assertArrayEquals(serial.rotorSettings(), machine.rotorSettings());
+        assertEquals(serial.convert("HELLOWORLD"),
+                     machine.convert("HELLOWORLD"));
+    }
+}
@@ -1,12 +1,12 @@
 package enigma;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The cycle notation is compiled once,
+ *  at construction, into dense forward and inverse index tables.
  *  @author Razi Mahmood
  */
 class Permutation {
@@ -19,8 +19,38 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = cycles;
+        _size = alphabet.size();
+        _forward = new int[_size];
+        _inverse = new int[_size];
+        for (int i = 0; i < _size; i++) {
+            _forward[i] = i;
+        }
 
         addCycle(_cycles);
+
+        for (int i = 0; i < _size; i++) {
+            _inverse[_forward[i]] = i;
+        }
+    }
+
+    /** Set this Permutation to the one mapping each index I of ALPHABET
+     *  to MAPPING[I], which must list every index exactly once. */
+    Permutation(int[] mapping, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        if (mapping.length != _size) {
+            throw new EnigmaException("mapping does not match alphabet");
+        }
+        _forward = mapping.clone();
+        _inverse = new int[_size];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < _size; i++) {
+            if (_forward[i] < 0 || _forward[i] >= _size
+                || _inverse[_forward[i]] >= 0) {
+                throw new EnigmaException("mapping is not a permutation");
+            }
+            _inverse[_forward[i]] = i;
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
@@ -33,132 +63,103 @@ class Permutation {
             return;
         }
 
-        String term = "";
         char c;
-        int countalphabet = 0;
-        HashSet<Character> charset = null;
+        boolean[] seen = new boolean[_size];
 
         for (int i = 0; i < cycle.length(); i++) {
             c = cycle.charAt(i);
-            if (charset == null) {
-                charset = new HashSet<Character>();
-            }
-            if (_alphabet.contains(c)) {
-                countalphabet++;
-                charset.add(c);
+            int index = _alphabet.index(c);
+            if (index >= 0) {
+                if (seen[index]) {
+                    throw new EnigmaException(
+                        "duplicate letters from alphabet");
+                }
+                seen[index] = true;
             } else if (!((c == '(') || (c == ')') || (c == ' '))) {
                 throw new EnigmaException("invalid characters");
             }
 
         }
-        if (charset == null) {
-            throw new EnigmaException("improper cycle string or empty");
-        } else {
-            if (charset.size() != countalphabet) {
-                throw new EnigmaException("duplicate letters from alphabet");
-            }
-        }
         boolean begincycle = true;
+        int first = -1;
+        int prev = -1;
         for (int i = 0; i < cycle.length(); i++) {
             c = cycle.charAt(i);
             if (c == '(') {
                 if (begincycle) {
                     begincycle = false;
-                    term = "";
+                    first = -1;
+                    prev = -1;
                 } else {
                     throw new EnigmaException("invalid cycle");
                 }
             } else if (c == ')') {
-
-                if (term.equals("")) {
+                if (begincycle) {
+                    throw new EnigmaException("invalid cycle");
+                } else if (prev < 0) {
                     throw new EnigmaException("Empty cycle");
                 } else {
-                    if (permList == null) {
-                        permList = new ArrayList<String>();
-                    }
-                    permList.add(term);
+                    _forward[prev] = first;
                     begincycle = true;
                 }
-            } else if (_alphabet.contains(c)) {
-                term += c;
+            } else if (!begincycle && _alphabet.contains(c)) {
+                int index = _alphabet.index(c);
+                if (prev < 0) {
+                    first = index;
+                } else {
+                    _forward[prev] = index;
+                }
+                prev = index;
             }
         }
+        if (!begincycle) {
+            throw new EnigmaException("invalid cycle");
+        }
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
-        int r = p % size();
+        int r = p % _size;
         if (r < 0) {
-            r += size();
+            r += _size;
         }
         return r;
     }
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _size;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-
-        int pWrap = wrap(p);
-        char c = _alphabet.toChar(pWrap);
-        return _alphabet.toInt(permute(c));
-
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-
-        int cWrap = wrap(c);
-        char in = _alphabet.toChar(cWrap);
-        return _alphabet.toInt(invert(in));
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        String singleCycle;
-        if (permList != null) {
-            for (int j = 0; j < permList.size(); j++) {
-                singleCycle = permList.get(j);
-                for (int i = 0; i < singleCycle.length(); i++) {
-                    if (singleCycle.charAt(i) == p) {
-                        if (i == (singleCycle.length() - 1)) {
-                            return singleCycle.charAt(0);
-                        } else {
-                            return singleCycle.charAt(i + 1);
-                        }
-                    }
-                }
-            }
+        int index = _alphabet.index(p);
+        if (index < 0) {
+            return p;
         }
-        return p;
+        return _alphabet.toChar(_forward[index]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-
-        String singleCycle;
-        if (permList != null) {
-            for (int j = 0; j < permList.size(); j++) {
-                singleCycle = permList.get(j);
-
-                for (int i = singleCycle.length() - 1; i >= 0; i--) {
-                    if (singleCycle.charAt(i) == c) {
-                        if (i == 0) {
-                            return singleCycle.charAt(singleCycle.length() - 1);
-                        } else {
-                            return singleCycle.charAt(i - 1);
-                        }
-                    }
-                }
-            }
+        int index = _alphabet.index(c);
+        if (index < 0) {
+            return c;
         }
-        return c;
+        return _alphabet.toChar(_inverse[index]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -166,24 +167,125 @@ class Permutation {
         return _alphabet;
     }
 
+    /** Return the forward table of this permutation: index I maps to
+     *  forwardTable()[I].  The array is shared and must not be modified. */
+    int[] forwardTable() {
+        return _forward;
+    }
+
+    /** Return the inverse table of this permutation: index I maps to
+     *  inverseTable()[I].  The array is shared and must not be
+     *  modified. */
+    int[] inverseTable() {
+        return _inverse;
+    }
+
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        if (permList == null) {
-            return true;
-        } else {
-            boolean found = false;
-            int i = 0;
-            String singleCycle = null;
-            while ((!found) && (i < permList.size())) {
-                singleCycle = permList.get(i);
-                if (singleCycle.length() == 1) {
-                    found = true;
-                } else {
-                    i++;
-                }
+        for (int i = 0; i < _size; i++) {
+            if (_forward[i] == i) {
+                return false;
             }
-            return (!found);
+        }
+        return true;
+    }
+
+    /* The following operate on permutations of 0 .. N-1 in the dense form
+     * of forwardTable(), an array P of length N in which I maps to P[I].
+     * They allocate nothing, writing their results into arrays supplied
+     * by the caller, which must have length N. */
+
+    /** Set OUT to the composition of FIRST and SECOND that applies FIRST
+     *  and then SECOND: I maps to SECOND[FIRST[I]].  OUT may be FIRST,
+     *  but not SECOND. */
+    static void compose(int[] first, int[] second, int[] out) {
+        checkLengths(first, second);
+        checkLengths(first, out);
+        for (int i = 0; i < first.length; i++) {
+            out[i] = second[first[i]];
+        }
+    }
+
+    /** Set OUT, which may not be P, to the inverse of P. */
+    static void invert(int[] p, int[] out) {
+        checkLengths(p, out);
+        for (int i = 0; i < p.length; i++) {
+            out[p[i]] = i;
+        }
+    }
+
+    /** Set OUT, which may not be P, to P raised to the power K, which
+     *  may be negative: P applied K times.  Each cycle of P is rotated
+     *  by K modulo its length, so the time taken does not depend on K.
+     *  WORK, of length N, is used as scratch space. */
+    static void power(int[] p, long k, int[] out, int[] work) {
+        checkLengths(p, out);
+        checkLengths(p, work);
+        Arrays.fill(out, -1);
+        for (int i = 0; i < p.length; i++) {
+            if (out[i] >= 0) {
+                continue;
+            }
+            int length = 0;
+            int x = i;
+            do {
+                work[length++] = x;
+                out[x] = x;
+                x = p[x];
+            } while (x != i);
+            int shift = (int) Math.floorMod(k, (long) length);
+            for (int j = 0, m = shift; j < length; j++) {
+                out[work[j]] = work[m];
+                m = m + 1 == length ? 0 : m + 1;
+            }
+        }
+    }
+
+    /** Set OUT, which may not be P, to the conjugate of P by a shift of
+     *  S: I maps to P[I + S] - S, modulo N.  This is the permutation
+     *  performed by a rotor wired as P at setting S. */
+    static void conjugate(int[] p, int s, int[] out) {
+        checkLengths(p, out);
+        int n = p.length;
+        int shift = Math.floorMod(s, n);
+        for (int i = 0, j = shift; i < n; i++) {
+            int y = p[j] - shift;
+            out[i] = y < 0 ? y + n : y;
+            j = j + 1 == n ? 0 : j + 1;
+        }
+    }
+
+    /** Decompose P into cycles, returning their number.  The cycles are
+     *  numbered in order of their smallest members, and ORDER is set to
+     *  the members of cycle 0, then of cycle 1, and so on, each cycle
+     *  starting with its smallest member and continuing as P maps it.
+     *  CYCLEOF[I] is set to the number of the cycle holding I. */
+    static int cycles(int[] p, int[] order, int[] cycleOf) {
+        checkLengths(p, order);
+        checkLengths(p, cycleOf);
+        Arrays.fill(cycleOf, -1);
+        int count = 0;
+        int k = 0;
+        for (int i = 0; i < p.length; i++) {
+            if (cycleOf[i] >= 0) {
+                continue;
+            }
+            int x = i;
+            do {
+                cycleOf[x] = count;
+                order[k++] = x;
+                x = p[x];
+            } while (x != i);
+            count += 1;
+        }
+        return count;
+    }
+
+    /** Check that A and B have the same length. */
+    private static void checkLengths(int[] a, int[] b) {
+        if (a.length != b.length) {
+            throw error("permutation tables of different sizes");
         }
     }
 
@@ -191,7 +293,11 @@ class Permutation {
     private Alphabet _alphabet;
     /** String to store cycles. */
     private String _cycles;
-    /** ArrayList to store the permutations. */
-    private ArrayList<String> permList;
+    /** Size of my alphabet. */
+    private final int _size;
+    /** Forward mapping: index I maps to _forward[I]. */
+    private final int[] _forward;
+    /** Inverse mapping: index I maps to _inverse[I]. */
+    private final int[] _inverse;
 
 }
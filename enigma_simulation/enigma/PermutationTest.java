@@ -62,6 +62,19 @@ public class PermutationTest {
 
     }
 
+    @Test
+    public void checkUnclosedCycle() {
+        String[] cycles = { "(AB", "(ABC) (DE", "(", "(AB) (" };
+        for (String cycle : cycles) {
+            try {
+                new Permutation(cycle, UPPER);
+                fail("unclosed cycle accepted: " + cycle);
+            } catch (EnigmaException excp) {
+                assertEquals("invalid cycle", excp.getMessage());
+            }
+        }
+    }
+
 
     @Test
     public void checkValidPermutes() {
@@ -79,4 +92,84 @@ public class PermutationTest {
         }
 
     }
+
+    @Test
+    public void checkNavalTables() {
+        for (String name : NAVALA_MAP.keySet()) {
+            perm = new Permutation(NAVALA.get(name), UPPER);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name));
+        }
+    }
+
+    @Test
+    public void checkDerangement() {
+        perm = new Permutation(NAVALA.get("B"), UPPER);
+        assertTrue(perm.derangement());
+        perm = new Permutation("(ABCDE) (HI)", UPPER);
+        assertFalse(perm.derangement());
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        assertFalse(perm.derangement());
+    }
+
+    @Test
+    public void checkAlgebra() {
+        int[] p = new Permutation(NAVALA.get("I"), UPPER).forwardTable();
+        int[] q = new Permutation(NAVALA.get("II"), UPPER).forwardTable();
+        int[] out = new int[26], inv = new int[26], work = new int[26];
+        Permutation.compose(p, q, out);
+        for (int i = 0; i < 26; i++) {
+            assertEquals(q[p[i]], out[i]);
+        }
+        Permutation.invert(p, inv);
+        Permutation.compose(p, inv, out);
+        for (int i = 0; i < 26; i++) {
+            assertEquals(i, out[i]);
+        }
+        int[] expected = new int[26];
+        for (long k = -30; k <= 30; k++) {
+            for (int i = 0; i < 26; i++) {
+                int x = i;
+                for (long j = 0; j < Math.abs(k); j++) {
+                    x = k < 0 ? inv[x] : p[x];
+                }
+                expected[i] = x;
+            }
+            Permutation.power(p, k, out, work);
+            assertArrayEquals("power " + k, expected, out);
+        }
+        Permutation.power(p, Long.MIN_VALUE, out, work);
+        Permutation.power(p, Long.MIN_VALUE % 420, expected, work);
+        assertArrayEquals(expected, out);
+
+        Rotor rotor = new Rotor("I", new Permutation(NAVALA.get("I"),
+                                                     UPPER));
+        for (int s = -3; s < 30; s++) {
+            Permutation.conjugate(p, s, out);
+            for (int i = 0; i < 26; i++) {
+                assertEquals(rotor.convertForward(i, Math.floorMod(s, 26)),
+                             out[i]);
+            }
+        }
+    }
+
+    @Test
+    public void checkCycles() {
+        perm = new Permutation("(ECA) (HI) (Z)", UPPER);
+        int[] order = new int[26], cycleOf = new int[26];
+        assertEquals(23, Permutation.cycles(perm.forwardTable(), order,
+                                            cycleOf));
+        assertEquals(0, order[0]);
+        assertEquals(4, order[1]);
+        assertEquals(2, order[2]);
+        assertEquals(1, order[3]);
+        assertEquals(cycleOf[0], cycleOf[2]);
+        assertEquals(cycleOf[7], cycleOf[8]);
+        assertEquals(22, cycleOf[25]);
+        try {
+            Permutation.cycles(perm.forwardTable(), new int[3], cycleOf);
+            fail("sizes not checked");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
 }
@@ -18,6 +18,16 @@ class Reflector extends FixedRotor {
         return true;
     }
 
+    @Override
+    RotorKind kind() {
+        return RotorKind.REFLECTOR;
+    }
+
+    @Override
+    Rotor copy() {
+        return new Reflector(name(), permutation());
+    }
+
     @Override
     void set(int posn) {
         if (posn != 0) {
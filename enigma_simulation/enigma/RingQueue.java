@@ -0,0 +1,111 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded queue of items passed from one producer thread to one
+ *  consumer thread through a ring buffer, without locks.  Each side
+ *  owns one index into the ring and only reads the other's, so an item
+ *  costs one ordered store and one volatile load at each end.  A side
+ *  that finds the ring full (or empty) spins briefly, then yields, then
+ *  sleeps in short naps until it is not, so a stalled stage holds up
+ *  its neighbours without wasting a processor.  Either side may cancel
+ *  the queue, after which neither waits.
+ *  @author Razi Mahmood
+ */
+class RingQueue<T> {
+
+    /** A queue holding at most CAPACITY items, rounded up to a power of
+     *  2. */
+    RingQueue(int capacity) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw error("ring capacity must be 1 to %d", MAX_CAPACITY);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        _items = new Object[size];
+        _mask = size - 1;
+    }
+
+    /** Append ITEM, which must not be null, waiting while I am full.
+     *  Returns false, without appending, if I have been cancelled.
+     *  Only one thread may put. */
+    boolean put(T item) {
+        long tail = _tail.get();
+        for (int tries = 0; tail - _head.get() == _items.length; tries++) {
+            if (_cancelled) {
+                return false;
+            }
+            pause(tries);
+        }
+        if (_cancelled) {
+            return false;
+        }
+        _items[(int) tail & _mask] = item;
+        _tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /** Remove and return my first item, waiting while I am empty.
+     *  Returns null if I have been cancelled.  Only one thread may
+     *  take. */
+    @SuppressWarnings("unchecked")
+    T take() {
+        long head = _head.get();
+        for (int tries = 0; head == _tail.get(); tries++) {
+            if (_cancelled) {
+                return null;
+            }
+            pause(tries);
+        }
+        if (_cancelled) {
+            return null;
+        }
+        int index = (int) head & _mask;
+        T item = (T) _items[index];
+        _items[index] = null;
+        _head.lazySet(head + 1);
+        return item;
+    }
+
+    /** Stop all waiting in put and take, and make them fail from now
+     *  on.  May be called by any thread. */
+    void cancel() {
+        _cancelled = true;
+    }
+
+    /** Wait a little, after TRIES earlier waits for the same item. */
+    private static void pause(int tries) {
+        if (tries < SPINS) {
+            Thread.onSpinWait();
+        } else if (tries < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(NAP_NANOS);
+        }
+    }
+
+    /** Largest capacity of a queue. */
+    static final int MAX_CAPACITY = 1 << 30;
+    /** Number of waits spent spinning. */
+    private static final int SPINS = 100;
+    /** Number of waits spent yielding, after spinning. */
+    private static final int YIELDS = 100;
+    /** Length of each later wait. */
+    private static final long NAP_NANOS = 50000;
+
+    /** The ring of items, whose length is a power of 2. */
+    private final Object[] _items;
+    /** Length of _items minus 1. */
+    private final int _mask;
+    /** Number of items ever taken, written only by the consumer. */
+    private final AtomicLong _head = new AtomicLong();
+    /** Number of items ever put, written only by the producer. */
+    private final AtomicLong _tail = new AtomicLong();
+    /** True once I have been cancelled. */
+    private volatile boolean _cancelled;
+}
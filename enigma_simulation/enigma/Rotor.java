@@ -2,7 +2,12 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A rotor's
+ *  wiring (its name, permutation, and notches) never changes, so one
+ *  rotor may be shared by any number of machines, on any threads.  Each
+ *  machine keeps the settings of its rotors itself and passes them to
+ *  the methods below that take a SETTING; the setting held by the rotor
+ *  (setting(), set(), advance()) serves only a rotor used on its own.
  *  @author Razi Mahmood
  */
 class Rotor {
@@ -14,6 +19,7 @@ class Rotor {
         this.rotates();
         _setting = 0;
         _charsetting = 'a';
+        _noNotches = new long[(perm.size() + Long.SIZE - 1) / Long.SIZE];
     }
 
     /** Return my name. */
@@ -46,6 +52,11 @@ class Rotor {
         return false;
     }
 
+    /** Return my kind. */
+    RotorKind kind() {
+        return RotorKind.FIXED;
+    }
+
     /** Return my current setting. */
     int setting() {
         return this._setting;
@@ -64,24 +75,43 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int newpos = _permutation.wrap(p + this._setting);
+        return convertForward(p, _setting);
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation when I am at SETTING. */
+    int convertForward(int p, int setting) {
+        int newpos = _permutation.wrap(p + setting);
         int c = _permutation.permute(newpos);
-        int temp = c - this._setting;
+        int temp = c - setting;
         return _permutation.wrap(temp);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int newpos = _permutation.wrap(e + this._setting);
+        return convertBackward(e, _setting);
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation when I am at
+     *  SETTING. */
+    int convertBackward(int e, int setting) {
+        int newpos = _permutation.wrap(e + setting);
         int x = _permutation.invert(newpos);
-        int temp = x - this._setting;
+        int temp = x - setting;
         return _permutation.wrap(temp);
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return atNotch(_setting);
+    }
+
+    /** Returns true iff I allow the rotor to my left to advance when I
+     *  am at SETTING. */
+    boolean atNotch(int setting) {
         return false;
     }
 
@@ -89,6 +119,33 @@ class Rotor {
     void advance() {
     }
 
+    /** Return the number of advances needed to bring me to a notch
+     *  (0 if I am at one), or -1 if I have no notches. */
+    int stepsToNotch() {
+        return stepsToNotch(_setting);
+    }
+
+    /** Return the number of advances needed to bring me from SETTING to
+     *  a notch (0 if SETTING is at one), or -1 if I have no notches. */
+    int stepsToNotch(int setting) {
+        return -1;
+    }
+
+    /** Return my notches as a bitset: bit S % 64 of notchBits()[S / 64]
+     *  is 1 iff atNotch(S).  The array is shared and must not be
+     *  modified. */
+    long[] notchBits() {
+        return _noNotches;
+    }
+
+    /** Return a new rotor with my name, permutation, and current
+     *  setting, whose setting changes independently of mine. */
+    Rotor copy() {
+        Rotor result = new Rotor(_name, _permutation);
+        result._setting = _setting;
+        return result;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -104,5 +161,7 @@ class Rotor {
     private int _setting;
     /** The variable used to store the char setting. */
     private char _charsetting;
+    /** The value of notchBits() for a rotor without notches. */
+    private final long[] _noNotches;
     /** The variable used to check if a rotor is moving. */
 }
@@ -0,0 +1,14 @@
+package enigma;
+
+/** The kinds of rotor, which decide the slots a rotor may occupy and
+ *  whether it moves.
+ *  @author Razi Mahmood
+ */
+enum RotorKind {
+    /** The leftmost rotor, which turns the signal back. */
+    REFLECTOR,
+    /** A rotor that never moves. */
+    FIXED,
+    /** A rotor with a pawl, which moves. */
+    MOVING
+}
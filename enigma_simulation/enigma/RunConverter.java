@@ -0,0 +1,20 @@
+package enigma;
+
+/** Converts runs of keypresses during which only the rightmost rotor of
+ *  a machine moves.  Throughout such a run the machine's substitution
+ *  at keypress I is a fixed composition of three tables, looked up at
+ *  the setting of the rightmost rotor at that keypress, so a whole run
+ *  can be converted at once without stepping the machine.
+ *  @author Razi Mahmood
+ */
+interface RunConverter {
+
+    /** Convert TEXT[START .. END-1], alphabet indices for an alphabet
+     *  of SIZE characters, in place.  The rightmost rotor is at setting
+     *  SETTING + 1 (modulo SIZE) for the character at START, and moves
+     *  one place for each following character.  The character X typed
+     *  at setting S converts to EXIT[S * SIZE + INNER[Y]], where Y is
+     *  ENTRY[S * SIZE + X]. */
+    void convert(int[] text, int start, int end, int setting, int size,
+                 int[] entry, int[] inner, int[] exit);
+}
@@ -0,0 +1,134 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RunConverter classes and the
+ *  bulk conversions of Machine that use them.
+ *  @author Razi Mahmood
+ */
+public class RunConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return LENGTH random characters drawn from SEED, mostly letters
+     *  with some spaces and punctuation. */
+    private static String randomText(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            int k = random.nextInt(30);
+            text.append(k < 26 ? UPPER_STRING.charAt(k) : " .,\n".charAt(k
+                                                                     - 26));
+        }
+        return text.toString();
+    }
+
+    /** Return MSG converted by MACHINE one keypress at a time. */
+    private static String byKeypress(Machine machine, String msg) {
+        Alphabet alphabet = machine.alphabet();
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < msg.length(); i++) {
+            char c = msg.charAt(i);
+            int index = alphabet.index(c);
+            result.append(index < 0 ? c
+                          : alphabet.toChar(machine.convert(index)));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkRunsMatchKeypresses() {
+        String[] directives = {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "* B Beta I II III AADU",
+            "* C Gamma VI VII VIII ZMZM (AZ)",
+            "* B Beta V IV III AAAA",
+        };
+        String text = randomText(20000, 1);
+        for (String directive : directives) {
+            assertEquals(directive, byKeypress(navalMachine(directive), text),
+                         navalMachine(directive).convert(text));
+            Machine machine = navalMachine(directive);
+            char[] chars = text.toCharArray();
+            for (int i = 0; i < chars.length; i += 777) {
+                machine.convert(chars, i, Math.min(chars.length, i + 777),
+                                chars, i);
+            }
+            assertEquals(directive, byKeypress(navalMachine(directive), text),
+                         new String(chars));
+        }
+        String directive = "* B III II I ZDU";
+        assertEquals(byKeypress(navalMachine(4, 3, directive), text),
+                     navalMachine(4, 3, directive).convert(text));
+        directive = "* B II IV V I AEVQ";
+        assertEquals(byKeypress(navalMachine(5, 4, directive), text),
+                     navalMachine(5, 4, directive).convert(text));
+    }
+
+    @Test
+    public void checkByteRunsMatchKeypresses() {
+        byte[] data = ByteStreamConverterTest.randomBytes(100000, 2);
+        char[] chars = new char[data.length];
+        for (int i = 0; i < data.length; i++) {
+            chars[i] = (char) (data[i] & 0xff);
+        }
+        String expected = byKeypress(ByteStreamConverterTest.byteMachine(9),
+                                     new String(chars));
+        ByteStreamConverterTest.byteMachine(9)
+            .convert(data, 0, data.length, data, 0);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(expected.charAt(i), (char) (data[i] & 0xff));
+        }
+    }
+
+    @Test
+    public void checkConvertersAgree() {
+        Random random = new Random(3);
+        RunConverter scalar = new ScalarRunConverter();
+        for (int size : new int[] { 2, 3, 26, 64, 256 }) {
+            int[] entry = new int[size * size];
+            int[] exit = new int[size * size];
+            int[] inner = new int[size];
+            for (int i = 0; i < entry.length; i++) {
+                entry[i] = random.nextInt(size);
+                exit[i] = random.nextInt(size);
+            }
+            for (int i = 0; i < size; i++) {
+                inner[i] = random.nextInt(size);
+            }
+            for (int trial = 0; trial < 20; trial++) {
+                int[] text = new int[random.nextInt(300)];
+                for (int i = 0; i < text.length; i++) {
+                    text[i] = random.nextInt(size);
+                }
+                int start = text.length == 0 ? 0
+                    : random.nextInt(text.length);
+                int setting = random.nextInt(size);
+                int[] expected = text.clone();
+                int s = setting;
+                for (int i = start; i < text.length; i++) {
+                    s = (s + 1) % size;
+                    expected[i] =
+                        exit[s * size + inner[entry[s * size + text[i]]]];
+                }
+                int[] actual = text.clone();
+                scalar.convert(actual, start, text.length, setting, size,
+                               entry, inner, exit);
+                assertArrayEquals(expected, actual);
+                actual = text.clone();
+                Machine.RUNS.convert(actual, start, text.length, setting,
+                                     size, entry, inner, exit);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+}
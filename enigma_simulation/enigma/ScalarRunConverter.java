@@ -0,0 +1,21 @@
+package enigma;
+
+/** A RunConverter that converts one character at a time.
+ *  @author Razi Mahmood
+ */
+class ScalarRunConverter implements RunConverter {
+
+    @Override
+    public void convert(int[] text, int start, int end, int setting,
+                        int size, int[] entry, int[] inner, int[] exit) {
+        int row = setting * size;
+        int last = size * size;
+        for (int i = start; i < end; i++) {
+            row += size;
+            if (row == last) {
+                row = 0;
+            }
+            text[i] = exit[row + inner[entry[row + text[i]]]];
+        }
+    }
+}
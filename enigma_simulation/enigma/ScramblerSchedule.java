@@ -0,0 +1,139 @@
+package enigma;
+
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** The scramblers (the substitutions performed by a machine's rotors and
+ *  reflector, without its plugboard) in effect at each of a run of
+ *  keypresses, for use by searches that try many rotor positions.  The
+ *  rightmost rotor moves on every keypress while the others rarely do,
+ *  so the scramblers for all settings of the rightmost rotor are
+ *  tabulated together, once per setting of the other rotors, and shared
+ *  by every run of keypresses that passes through that setting.
+ *  @author Razi Mahmood
+ */
+class ScramblerSchedule {
+
+    /** A schedule for runs of LENGTH keypresses on a machine with the
+     *  configuration of MACHINE and the rotors named ORDER. */
+    ScramblerSchedule(Machine machine, String[] order, int length) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _machine = machine.copy();
+        _machine.insertRotors(order);
+        _machine.setPlugboard(new Permutation("", _alphabet));
+        _forward = new int[length][];
+        _backward = new int[length][];
+        _base = new int[length];
+        _cacheLimit = Math.max(1, CACHE_ENTRIES / (2 * _size * _size));
+    }
+
+    /** Tabulate the scramblers for the keypresses numbered OFFSET+1 ..
+     *  OFFSET+length() from rotor settings SETTINGS (as returned by
+     *  Machine.rotorSettings), so that the first is in effect while the
+     *  character at OFFSET of a message begun at SETTINGS is typed. */
+    void load(int[] settings, long offset) {
+        _machine.restoreSettings(settings);
+        _machine.seek(offset);
+        int[] current = _machine.rotorSettings();
+        int[][] tables = tables(current);
+        int fast = current[current.length - 1];
+        for (int i = 0; i < _base.length; i++) {
+            if (_machine.step()) {
+                current = _machine.rotorSettings();
+                tables = tables(current);
+            }
+            fast = fast + 1 == _size ? 0 : fast + 1;
+            _forward[i] = tables[0];
+            _backward[i] = tables[1];
+            _base[i] = fast * _size;
+        }
+    }
+
+    /** Return the number of keypresses I tabulate. */
+    int length() {
+        return _base.length;
+    }
+
+    /** Return the conversion of X (an alphabet index) by the scrambler
+     *  at keypress I of the current run. */
+    int forward(int i, int x) {
+        return _forward[i][_base[i] + x];
+    }
+
+    /** Return the character (an alphabet index) converted to X by the
+     *  scrambler at keypress I of the current run. */
+    int backward(int i, int x) {
+        return _backward[i][_base[i] + x];
+    }
+
+    /** Return the scramblers at every setting of the rightmost rotor
+     *  when the others have the settings in CURRENT, as a pair of tables
+     *  in the form produced by Machine.fastSubstitutions: the forward
+     *  substitutions and their inverses. */
+    private int[][] tables(int[] current) {
+        long key = 0;
+        for (int i = 1; i < current.length - 1; i++) {
+            try {
+                key = Math.addExact(Math.multiplyExact(key, _size),
+                                    current[i]);
+            } catch (ArithmeticException excp) {
+                throw error("too many rotor states to search");
+            }
+        }
+        int[][] tables = _cache.get(key);
+        if (tables == null) {
+            if (_cache.size() >= _cacheLimit) {
+                _cache.clear();
+            }
+            int[] forward = new int[_size * _size];
+            int[] backward = new int[_size * _size];
+            _machine.fastSubstitutions(forward, 0);
+            for (int s = 0; s < _size * _size; s += _size) {
+                for (int x = 0; x < _size; x++) {
+                    backward[s + forward[s + x]] = x;
+                }
+            }
+            tables = new int[][] { forward, backward };
+            _cache.put(key, tables);
+        }
+        return tables;
+    }
+
+    /** Advance SETTINGS[FIRST ..], as an odometer of digits in the range
+     *  0 .. SIZE-1 whose last digit moves fastest, to the next position.
+     *  Returns false if they have all returned to 0. */
+    static boolean advance(int[] settings, int first, int size) {
+        for (int i = settings.length - 1; i >= first; i--) {
+            settings[i] += 1;
+            if (settings[i] < size) {
+                return true;
+            }
+            settings[i] = 0;
+        }
+        return false;
+    }
+
+    /** Number of table entries that a schedule may cache. */
+    private static final int CACHE_ENTRIES = 1 << 22;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+    /** Size of _alphabet. */
+    private final int _size;
+    /** Machine, without a plugboard, that is stepped and tabulated. */
+    private final Machine _machine;
+    /** The tables holding the scrambler at each keypress, and their
+     *  inverses. */
+    private final int[][] _forward, _backward;
+    /** Start of the scrambler for each keypress in _forward and
+     *  _backward. */
+    private final int[] _base;
+    /** Tables produced by tables(), by the settings of the rotors
+     *  between the reflector and the rightmost rotor. */
+    private final HashMap<Long, int[][]> _cache =
+        new HashMap<Long, int[][]>();
+    /** Largest number of entries kept in _cache. */
+    private final int _cacheLimit;
+}
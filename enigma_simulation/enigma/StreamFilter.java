@@ -0,0 +1,211 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** Converts input as Main does, but reads it in chunks of a fixed number
+ *  of characters rather than as lines, so that memory use does not
+ *  depend on the length of the lines: a message line of any length is
+ *  converted and written, in groups continued from chunk to chunk, as
+ *  it arrives.  Lines are ended as by a Scanner, and trimmed of leading
+ *  and trailing blanks as Main trims them; only settings lines are
+ *  collected whole, and they are limited to MAX_SETTINGS_LENGTH
+ *  characters.  The trailing blanks of a message line are held back
+ *  until it is seen whether anything follows them in that line, so a run
+ *  of more than MAX_HELD_BLANKS blanks ending a line may be partly
+ *  written.
+ *  @author Razi Mahmood
+ */
+class StreamFilter {
+
+    /** A filter converting with MACHINE the messages read in chunks of
+     *  DEFAULT_CHUNK_SIZE characters, and processing settings lines with
+     *  MAIN. */
+    StreamFilter(Main main, Machine machine) {
+        this(main, machine, DEFAULT_CHUNK_SIZE);
+    }
+
+    /** A filter converting with MACHINE the messages read in chunks of
+     *  CHUNKSIZE characters, and processing settings lines with MAIN. */
+    StreamFilter(Main main, Machine machine, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw error("chunk size must be positive");
+        }
+        _rules = main.lineRules(machine);
+        _chunk = new char[chunkSize];
+        _blanks = new char[MAX_HELD_BLANKS];
+    }
+
+    /** Convert the messages read from INPUT, writing them to OUTPUT, and
+     *  check the input as Main does. */
+    void process(Reader input, GroupedWriter output) {
+        _output = output;
+        _state = LINE_START;
+        try {
+            int n;
+            while ((n = input.read(_chunk, 0, _chunk.length)) >= 0) {
+                filter(n);
+            }
+        } catch (IOException excp) {
+            throw error("error reading input: %s", excp.getMessage());
+        }
+        endLine();
+        _rules.finish();
+    }
+
+    /** Process the characters _chunk[0 .. LENGTH-1]. */
+    private void filter(int length) {
+        int i = 0;
+        if (_afterReturn && length > 0 && _chunk[0] == '\n') {
+            i = 1;
+        }
+        _afterReturn = false;
+        while (i < length) {
+            int end = i;
+            while (end < length && !isLineEnd(_chunk[end])) {
+                end++;
+            }
+            process(i, end);
+            if (end == length) {
+                return;
+            }
+            endLine();
+            i = end + 1;
+            if (_chunk[end] == '\r') {
+                if (i == length) {
+                    _afterReturn = true;
+                } else if (_chunk[i] == '\n') {
+                    i++;
+                }
+            }
+        }
+    }
+
+    /** Process _chunk[START .. END-1], which contains no line end, as
+     *  the continuation of the current line. */
+    private void process(int start, int end) {
+        if (_state == LINE_START) {
+            while (start < end && isBlank(_chunk[start])) {
+                start++;
+            }
+            if (start == end) {
+                return;
+            }
+            for (; _blankLines > 0; _blankLines--) {
+                _output.endLine();
+            }
+            _state = _rules.classify(_chunk[start]);
+        }
+        switch (_state) {
+        case Main.SETTINGS_LINE:
+            if (_settings.length() + end - start > MAX_SETTINGS_LENGTH) {
+                throw error("settings line too long");
+            }
+            _settings.append(_chunk, start, end - start);
+            break;
+        case Main.MESSAGE_LINE:
+            int last = end;
+            while (last > start && isBlank(_chunk[last - 1])) {
+                last--;
+            }
+            if (last > start) {
+                writeBlanks();
+                convert(_chunk, start, last);
+            }
+            if (_numBlanks + end - last > _blanks.length) {
+                writeBlanks();
+                if (end - last > _blanks.length) {
+                    convert(_chunk, last, end);
+                    break;
+                }
+            }
+            System.arraycopy(_chunk, last, _blanks, _numBlanks, end - last);
+            _numBlanks += end - last;
+            break;
+        default:
+            break;
+        }
+    }
+
+    /** End the current line. */
+    private void endLine() {
+        switch (_state) {
+        case LINE_START:
+            _blankLines++;
+            break;
+        case Main.SETTINGS_LINE:
+            _rules.applySettings(_settings.toString());
+            _settings.setLength(0);
+            break;
+        case Main.MESSAGE_LINE:
+            _numBlanks = 0;
+            _output.endLine();
+            break;
+        default:
+            break;
+        }
+        _state = LINE_START;
+    }
+
+    /** Convert and write the blanks held back from the current line. */
+    private void writeBlanks() {
+        if (_numBlanks > 0) {
+            convert(_blanks, 0, _numBlanks);
+            _numBlanks = 0;
+        }
+    }
+
+    /** Convert TEXT[START .. END-1] in place, and write it as the
+     *  continuation of the current line. */
+    private void convert(char[] text, int start, int end) {
+        _rules.convert(text, start, end);
+        _output.write(text, start, end);
+    }
+
+    /** Return true iff C ends a line, as for Scanner.nextLine. */
+    private static boolean isLineEnd(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+            || c == '\u0085';
+    }
+
+    /** Return true iff C is removed from the ends of lines by
+     *  String.trim. */
+    private static boolean isBlank(char c) {
+        return c <= ' ';
+    }
+
+    /** Default number of characters read at a time. */
+    static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+    /** Largest number of characters in a settings line. */
+    static final int MAX_SETTINGS_LENGTH = 1 << 16;
+    /** Largest number of blanks held back from a message line. */
+    static final int MAX_HELD_BLANKS = 1 << 12;
+
+    /** State at the start of a line, before anything but blanks.  In
+     *  the rest of a line, the state is its kind, as given by
+     *  Main.LineRules. */
+    private static final int LINE_START = -1;
+
+    /** Classifies lines, applies settings, and converts messages. */
+    private final Main.LineRules _rules;
+    /** Characters just read. */
+    private final char[] _chunk;
+    /** The blanks held back from the end of the current message line. */
+    private final char[] _blanks;
+    /** Number of characters in _blanks. */
+    private int _numBlanks;
+    /** The current settings line, so far. */
+    private final StringBuilder _settings = new StringBuilder();
+    /** Where converted messages go. */
+    private GroupedWriter _output;
+    /** What the current line is: LINE_START, or the kind of line. */
+    private int _state;
+    /** Number of blank lines not yet written: they are written only if
+     *  something other than blanks follows them, as by Main. */
+    private long _blankLines;
+    /** True iff the last chunk ended with '\r', so that a '\n' starting
+     *  the next belongs to the same line end. */
+    private boolean _afterReturn;
+}
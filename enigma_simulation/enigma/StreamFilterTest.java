@@ -0,0 +1,179 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.LinePipelineTest.serial;
+
+/** The suite of all JUnit tests for the StreamFilter class.
+ *  @author Razi Mahmood
+ */
+public class StreamFilterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return the output of processing INPUT with CONFIG through a
+     *  StreamFilter reading chunks of CHUNKSIZE characters, followed by
+     *  the message of the error thrown, if any. */
+    static String streamed(String config, String input, int chunkSize) {
+        Main parser = new Main(new Scanner(config));
+        Machine machine = parser.readConfig();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupedWriter writer =
+            new GroupedWriter(Channels.newChannel(bytes),
+                              Charset.defaultCharset(), 64, 1);
+        String error = "";
+        try {
+            new StreamFilter(parser, machine, chunkSize)
+                .process(new StringReader(input), writer);
+        } catch (EnigmaException excp) {
+            error = excp.getMessage();
+        } finally {
+            writer.close();
+        }
+        return new String(bytes.toByteArray(), Charset.defaultCharset())
+            + error;
+    }
+
+    @Test
+    public void checkSameAsLines() {
+        String config = MetricsTest.CONFIG;
+        String[] inputs = {
+            MetricsTest.INPUT,
+            "IGNORED\n\n* B I II AA\nABC\n\n  * B II I ZZ (AB) \nABC\n",
+            "* B I II AA\nABC\n* B I III AA\nABC\n",
+            "* B I II AA\r\n  HELLO,  WORLD!\t \r\n\r\nXYZ\rABC\n\n\n",
+            "* B I II AA\nAB C D   EFG HIJKL M\u2028NOP\u0085QRS",
+            "\n \n* B I II AA\n\nA B\t C  \n \t\n  \n",
+            "* B I II AA\nHELLO\n*  B  I\tII  AB\nHELLO",
+            "ABC\n",
+            "* B I II AA\n",
+            "\n\n",
+        };
+        for (String input : inputs) {
+            String expected = serial(config, input);
+            for (int chunk : new int[] { 1, 2, 3, 7, 64, 1 << 16 }) {
+                assertEquals(input + " in chunks of " + chunk, expected,
+                             streamed(config, input, chunk));
+            }
+        }
+    }
+
+    @Test
+    public void checkSupplementary() {
+        Main parser = new Main(new Scanner(MetricsTest.CONFIG));
+        Machine machine = parser.readConfig();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupedWriter writer =
+            new GroupedWriter(Channels.newChannel(bytes),
+                              StandardCharsets.UTF_8, 64, 1);
+        String smile = "\ud83d\ude00";
+        new StreamFilter(parser, machine, 1)
+            .process(new StringReader("* B I II AA\n" + smile + "HELLO"
+                                      + smile + "\n"), writer);
+        writer.close();
+        String expected = serial(MetricsTest.CONFIG,
+                                 "* B I II AA\n..HELLO..\n");
+        expected = smile + expected.substring(2, 8) + smile
+            + expected.substring(10);
+        assertEquals(expected,
+                     new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void checkLongLines() {
+        Random random = new Random(1);
+        StringBuilder input = new StringBuilder("* B I II AA\n");
+        for (int line = 0; line < 3; line++) {
+            int length = 20000 + random.nextInt(20000);
+            for (int i = 0; i < length; i++) {
+                int k = random.nextInt(30);
+                input.append(k < 26 ? (char) ('A' + k) : k < 28 ? ' ' : '.');
+            }
+            input.append('\n');
+        }
+        String expected = serial(MetricsTest.CONFIG, input.toString());
+        for (int chunk : new int[] { 13, 4096 }) {
+            assertEquals(expected,
+                         streamed(MetricsTest.CONFIG, input.toString(),
+                                  chunk));
+        }
+    }
+
+    @Test
+    public void checkUnboundedLine() {
+        final long length = 50_000_000;
+        Reader input = new Reader() {
+            @Override
+            public int read(char[] buf, int off, int len) {
+                if (_sent == 0) {
+                    String header = "* B I II AA\n";
+                    header.getChars(0, header.length(), buf, off);
+                    _sent = header.length();
+                    return header.length();
+                }
+                if (_sent >= length) {
+                    return -1;
+                }
+                int n = (int) Math.min(len, length - _sent);
+                for (int i = 0; i < n; i++) {
+                    buf[off + i] = (char) ('A' + (_sent + i) % 26);
+                }
+                _sent += n;
+                return n;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            /** Number of characters read. */
+            private long _sent;
+        };
+        Main parser = new Main(new Scanner(MetricsTest.CONFIG));
+        Machine machine = parser.readConfig();
+        long[] written = new long[1];
+        GroupedWriter writer = new GroupedWriter(
+            Channels.newChannel(new java.io.OutputStream() {
+                @Override
+                public void write(int b) {
+                    written[0]++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    written[0] += len;
+                }
+            }), Charset.defaultCharset(), 1 << 16, 1);
+        new StreamFilter(parser, machine, 1 << 12).process(input, writer);
+        writer.close();
+        long letters = length - 12;
+        long groups = (letters + Main.GROUP_SIZE - 1) / Main.GROUP_SIZE;
+        assertEquals(letters + groups - 1
+                     + System.lineSeparator().length(), written[0]);
+    }
+
+    @Test
+    public void checkLongSettings() {
+        StringBuilder input = new StringBuilder("* B I II AA");
+        for (int i = 0; i < StreamFilter.MAX_SETTINGS_LENGTH; i++) {
+            input.append(' ');
+        }
+        input.append("\nABC\n");
+        assertEquals("settings line too long",
+                     streamed(MetricsTest.CONFIG, input.toString(), 100));
+    }
+}
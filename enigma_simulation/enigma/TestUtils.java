@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -126,4 +127,49 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** Notches of the naval rotors, with "N" and "R" marking the
+     *  non-moving rotors and reflectors, as in default.conf. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+        NAVAL_NOTCHES.put("Beta", "N");
+        NAVAL_NOTCHES.put("Gamma", "N");
+        NAVAL_NOTCHES.put("B", "R");
+        NAVAL_NOTCHES.put("C", "R");
+    }
+
+    /** Return a new 5-rotor, 3-pawl machine holding all the naval
+     *  rotors, configured according to DIRECTIVE, a settings line as in
+     *  an input file. */
+    static Machine navalMachine(String directive) {
+        return navalMachine(5, 3, directive);
+    }
+
+    /** Return a new machine with NUMROTORS slots and PAWLS pawls holding
+     *  all the naval rotors, configured according to DIRECTIVE. */
+    static Machine navalMachine(int numRotors, int pawls, String directive) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            String notches = NAVAL_NOTCHES.get(name);
+            if (notches.equals("R")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (notches.equals("N")) {
+                rotors.add(new FixedRotor(name, perm));
+            } else {
+                rotors.add(new MovingRotor(name, perm, notches));
+            }
+        }
+        Machine machine = new Machine(UPPER, numRotors, pawls, rotors);
+        machine.processDirective(directive);
+        return machine;
+    }
+
 }
@@ -0,0 +1,136 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Measures how much a candidate decryption, given as alphabet indices,
+ *  looks like language.  Two measures are provided: the index of
+ *  coincidence, which needs no model and is unchanged by any
+ *  substitution of the text, and the log-likelihood of the text under
+ *  an n-gram model trained on a corpus.  Neither allocates: histograms
+ *  are supplied by the caller, and n-grams are looked up in a single
+ *  table indexed by their letters as a number in base alphabet size.
+ *  @author Razi Mahmood
+ */
+class TextScorer {
+
+    /** A scorer for texts over ALPHABET that offers only the index of
+     *  coincidence. */
+    TextScorer(Alphabet alphabet) {
+        _size = alphabet.size();
+        _order = 0;
+        _logProbs = null;
+    }
+
+    /** A scorer for texts over ALPHABET with a model of n-grams of
+     *  ORDER characters, estimated from the characters of CORPUS that
+     *  are in ALPHABET (others are skipped).  Unseen n-grams are given
+     *  the probability of a single occurrence in a corpus ten times as
+     *  large. */
+    TextScorer(Alphabet alphabet, int order, CharSequence corpus) {
+        _size = alphabet.size();
+        _order = order;
+        if (order < 1) {
+            throw error("n-gram order must be positive");
+        }
+        long entries = 1;
+        for (int i = 0; i < order; i++) {
+            entries *= _size;
+            if (entries > MAX_NGRAMS) {
+                throw error("too many %d-grams to tabulate", order);
+            }
+        }
+        int[] counts = new int[(int) entries];
+        long total = 0;
+        int code = 0;
+        int seen = 0;
+        int modulus = (int) (entries / _size);
+        for (int i = 0; i < corpus.length(); i++) {
+            int c = alphabet.index(corpus.charAt(i));
+            if (c >= 0) {
+                code = (code % modulus) * _size + c;
+                seen++;
+                if (seen >= order) {
+                    counts[code]++;
+                    total++;
+                }
+            }
+        }
+        if (total == 0) {
+            throw error("corpus holds no %d-grams", order);
+        }
+        _logProbs = new float[counts.length];
+        double floor = Math.log(1.0 / (UNSEEN_SCALE * total));
+        for (int i = 0; i < counts.length; i++) {
+            _logProbs[i] = (float) (counts[i] == 0 ? floor
+                                    : Math.log((double) counts[i] / total));
+        }
+    }
+
+    /** Return true iff I have an n-gram model. */
+    boolean hasModel() {
+        return _logProbs != null;
+    }
+
+    /** Return the index of coincidence of TEXT[0 .. LENGTH-1]: the
+     *  probability that two of its characters drawn at random are
+     *  equal.  HISTOGRAM, of at least alphabet size entries, is used as
+     *  scratch space. */
+    double indexOfCoincidence(int[] text, int length, int[] histogram) {
+        for (int x = 0; x < _size; x++) {
+            histogram[x] = 0;
+        }
+        for (int i = 0; i < length; i++) {
+            histogram[text[i]]++;
+        }
+        return indexOfCoincidence(histogram, length);
+    }
+
+    /** Return the index of coincidence of a text of LENGTH characters
+     *  in which character X occurs HISTOGRAM[X] times. */
+    double indexOfCoincidence(int[] histogram, int length) {
+        if (length < 2) {
+            return 0.0;
+        }
+        long sum = 0;
+        for (int x = 0; x < _size; x++) {
+            sum += (long) histogram[x] * (histogram[x] - 1);
+        }
+        return (double) sum / ((long) length * (length - 1));
+    }
+
+    /** Return the log-likelihood of TEXT[0 .. LENGTH-1] under my n-gram
+     *  model, divided by its number of n-grams. */
+    double logLikelihood(int[] text, int length) {
+        if (_logProbs == null) {
+            throw error("no n-gram model");
+        }
+        if (length < _order) {
+            return 0.0;
+        }
+        int modulus = _logProbs.length / _size;
+        int code = 0;
+        for (int i = 0; i < _order - 1; i++) {
+            code = code * _size + text[i];
+        }
+        double sum = 0.0;
+        for (int i = _order - 1; i < length; i++) {
+            code = (code % modulus) * _size + text[i];
+            sum += _logProbs[code];
+        }
+        return sum / (length - _order + 1);
+    }
+
+    /** Largest number of n-grams in a model. */
+    static final int MAX_NGRAMS = 1 << 24;
+    /** Size of the corpus, relative to the real one, in which an unseen
+     *  n-gram is supposed to occur once. */
+    private static final double UNSEEN_SCALE = 10.0;
+
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of characters in each n-gram of my model, or 0. */
+    private final int _order;
+    /** The log probability of each n-gram, indexed by its characters as
+     *  a base-_size number, or null if I have no model. */
+    private final float[] _logProbs;
+}
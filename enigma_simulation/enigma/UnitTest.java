@@ -14,7 +14,21 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
 
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class,
+                          AlphabetTest.class, KeystreamTableTest.class,
+                          ParallelConverterTest.class, BatchServiceTest.class,
+                          CribSearchTest.class,
+                          CiphertextAttackTest.class,
+                          ByteStreamConverterTest.class,
+                          RunConverterTest.class,
+                          ConfigTokenizerTest.class,
+                          MachineRotorsTest.class,
+                          MetricsTest.class,
+                          GroupedWriterTest.class,
+                          LinePipelineTest.class,
+                          MessageBlockProcessorTest.class,
+                          MachineSnapshotTest.class,
+                          StreamFilterTest.class);
     }
 
     @Test
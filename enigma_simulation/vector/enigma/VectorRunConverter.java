@@ -0,0 +1,60 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A RunConverter that converts a vector of characters at a time with
+ *  the incubating JDK Vector API, gathering each table lookup for all
+ *  lanes at once.  It is compiled separately (see vector/Makefile), and
+ *  is used by Machine only if it loads, which requires running with
+ *  --add-modules jdk.incubator.vector; otherwise Machine falls back to
+ *  ScalarRunConverter.
+ *  @author Razi Mahmood
+ */
+class VectorRunConverter implements RunConverter {
+
+    @Override
+    public void convert(int[] text, int start, int end, int setting,
+                        int size, int[] entry, int[] inner, int[] exit) {
+        int lanes = SPECIES.length();
+        int i = start;
+        if (size >= lanes) {
+            int[] index = INDEX.get();
+            int base = setting + 1 == size ? 0 : setting + 1;
+            for (; i + lanes <= end; i += lanes) {
+                IntVector settings = IOTA.add(base);
+                VectorMask<Integer> wrapped =
+                    settings.compare(VectorOperators.GE, size);
+                IntVector rows = settings.sub(size, wrapped).mul(size);
+                rows.add(IntVector.fromArray(SPECIES, text, i))
+                    .intoArray(index, 0);
+                IntVector.fromArray(SPECIES, entry, 0, index, 0)
+                    .intoArray(index, 0);
+                rows.add(IntVector.fromArray(SPECIES, inner, 0, index, 0))
+                    .intoArray(index, 0);
+                IntVector.fromArray(SPECIES, exit, 0, index, 0)
+                    .intoArray(text, i);
+                base += lanes;
+                if (base >= size) {
+                    base -= size;
+                }
+            }
+            setting = base == 0 ? size - 1 : base - 1;
+        }
+        SCALAR.convert(text, i, end, setting, size, entry, inner, exit);
+    }
+
+    /** The vector shape used. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+    /** The lane numbers 0, 1, .... */
+    private static final IntVector IOTA =
+        IntVector.zero(SPECIES).addIndex(1);
+    /** Converts the characters left over after the last full vector. */
+    private static final RunConverter SCALAR = new ScalarRunConverter();
+    /** Per-thread scratch space for the indices of each gather. */
+    private static final ThreadLocal<int[]> INDEX =
+        ThreadLocal.withInitial(() -> new int[SPECIES.length()]);
+}